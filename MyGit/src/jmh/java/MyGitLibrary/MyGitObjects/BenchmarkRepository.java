@@ -0,0 +1,114 @@
+package MyGitLibrary.MyGitObjects;
+
+import Application.RepositoryGenerator;
+import MyGitLibrary.Constants;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Synthetic repository shared by benchmarks, generated by RepositoryGenerator. Every commit of the history changes
+ * a twentieth of the files, half of the commits are made on another branch. Content is generated from a fixed seed,
+ * so all runs measure the same repository.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkRepository {
+
+    private static final long SEED = 20170318;
+
+    /**
+     * Branch that was created from the first commit of the history and has it's own commits.
+     */
+    static final String OTHER_BRANCH = RepositoryGenerator.getBranchName(0);
+
+    @Param({"100", "1000"})
+    public int fileCount;
+
+    @Param({"8"})
+    public int fanOut;
+
+    @Param({"4096"})
+    public int fileSize;
+
+    @Param({"20"})
+    public int historyLength;
+
+    Path root;
+    RepositoryManager repositoryManager;
+    List<Path> files;
+    Random random;
+
+    @Setup
+    public void createRepository() throws Exception {
+        root = Files.createTempDirectory("mygit-benchmark");
+        random = new Random(SEED);
+        repositoryManager = new RepositoryGenerator()
+                .setSeed(SEED)
+                .setFileCount(fileCount)
+                .setFanOut(fanOut)
+                .setFileSize(fileSize)
+                .setFileSizeSigma(0)
+                .setCommitCount(historyLength)
+                .setBranchCount(1)
+                .setMergeFrequency(0)
+                .setChangedFiles(fileCount / 20)
+                .generate(root);
+        try (Stream<Path> paths = Files.walk(root)) {
+            files = paths.filter(path -> !path.startsWith(root.resolve(Constants.myGitDirectory))
+                    && Files.isRegularFile(path)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @TearDown
+    public void removeRepository() throws IOException {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    /**
+     * Rewrites given number of random files and adds them.
+     */
+    void changeFiles(int count) throws Exception {
+        changeFiles(count, 0, files.size());
+    }
+
+    /**
+     * Rewrites given number of random files with numbers from the range and adds them.
+     */
+    void changeFiles(int count, int from, int to) throws Exception {
+        List<Path> changed = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path file = files.get(from + random.nextInt(to - from));
+            Files.write(file, content());
+            changed.add(file);
+        }
+        repositoryManager.add(changed);
+    }
+
+    /**
+     * @return - lines of random letters of total size fileSize.
+     */
+    @NotNull byte[] content() {
+        byte[] bytes = new byte[fileSize];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = i % 64 == 63 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+        }
+        return bytes;
+    }
+
+    @NotNull String headCommit() throws IOException {
+        return Files.readAllLines(root.resolve(Constants.head)).get(1);
+    }
+}
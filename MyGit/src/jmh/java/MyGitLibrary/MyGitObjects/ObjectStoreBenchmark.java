@@ -0,0 +1,111 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Constants;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reading and writing objects and of hashing files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObjectStoreBenchmark {
+
+    private ObjectStore store;
+    private Path scratch;
+    private ObjectStore scratchStore;
+    private String treeHash;
+    private String blobHash;
+    private Blob blob;
+    private Path file;
+    private byte[] content;
+    private long counter;
+
+    @Setup
+    public void setup(BenchmarkRepository repository) throws Exception {
+        store = new ObjectStore(repository.root);
+        Commit commit = (Commit) store.read(repository.headCommit());
+        treeHash = commit.getTree().getHash();
+        file = repository.files.get(0);
+        blobHash = Blob.hashFile(file);
+        blob = (Blob) store.read(blobHash);
+        content = repository.content();
+    }
+
+    /**
+     * New blobs are written to a separate store, which is removed after every iteration, so the disk isn't filled.
+     */
+    @Setup(Level.Iteration)
+    public void createScratchStore() throws Exception {
+        scratch = Files.createTempDirectory("mygit-benchmark-scratch");
+        Files.createDirectories(scratch.resolve(Constants.objectsDirectory));
+        scratchStore = new ObjectStore(scratch);
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeScratchStore() throws Exception {
+        FileUtils.deleteDirectory(scratch.toFile());
+    }
+
+    /**
+     * Reads a tree from disk, the object cache is empty.
+     */
+    @Benchmark
+    public MyGitObject readTreeUncached(BenchmarkRepository repository) throws Exception {
+        return new ObjectStore(repository.root).read(treeHash);
+    }
+
+    @Benchmark
+    public MyGitObject readTreeCached() throws Exception {
+        return store.read(treeHash);
+    }
+
+    /**
+     * Reads a blob from disk together with it's content.
+     */
+    @Benchmark
+    public byte[] readBlobContent(BenchmarkRepository repository) throws Exception {
+        return ((Blob) new ObjectStore(repository.root).read(blobHash)).getContent();
+    }
+
+    /**
+     * Writes a blob that isn't stored yet.
+     */
+    @Benchmark
+    public Blob writeNewBlob() throws Exception {
+        counter++;
+        for (int i = 0; i < Long.BYTES; i++) {
+            content[i] = (byte) (counter >>> (8 * i));
+        }
+        return new Blob(scratchStore, content);
+    }
+
+    /**
+     * Writes a blob that is already stored, so only it's existence is checked.
+     */
+    @Benchmark
+    public void writeExistingBlob() throws Exception {
+        store.write(blob);
+    }
+
+    @Benchmark
+    public String hashFile() throws Exception {
+        return Blob.hashFile(file);
+    }
+
+    /**
+     * Hashes a file and saves it as a blob in one pass, the way add does.
+     */
+    @Benchmark
+    public Blob saveFile() throws Exception {
+        return Blob.fromFile(store, file);
+    }
+}
@@ -0,0 +1,152 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of repository operations. Every benchmark gets it's own synthetic repository, since some of them
+ * change it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    @Benchmark
+    public StatusObject status(BenchmarkRepository repository) throws Exception {
+        return repository.repositoryManager.status();
+    }
+
+    @Benchmark
+    public LogObject log(BenchmarkRepository repository) throws Exception {
+        return repository.repositoryManager.log();
+    }
+
+    /**
+     * Builds tree of a commit that changes a twentieth of the files, the way commit does.
+     */
+    @Benchmark
+    public Tree buildCommitTree(CommitTree commitTree) throws Exception {
+        return commitTree.headTree.addPathsToTree(commitTree.changes);
+    }
+
+    /**
+     * Commits a twentieth of the files, which are changed and added before every invocation.
+     */
+    @Benchmark
+    public void commit(ChangedFiles changedFiles) throws Exception {
+        changedFiles.repository.repositoryManager.commit("benchmark");
+    }
+
+    /**
+     * Checks out master and the other branch of the repository in turn.
+     */
+    @Benchmark
+    public void checkout(Checkout checkout) throws Exception {
+        checkout.repository.repositoryManager.checkout(checkout.nextBranch());
+    }
+
+    /**
+     * Merges two branches that changed different files.
+     */
+    @Benchmark
+    public MergeObject merge(Merge merge) throws Exception {
+        return merge.repository.repositoryManager.merge(Merge.RIGHT);
+    }
+
+    @State(Scope.Thread)
+    public static class CommitTree {
+
+        Tree headTree;
+        Map<Path, String> changes = new HashMap<>();
+
+        @Setup
+        public void setup(BenchmarkRepository repository) throws Exception {
+            ObjectStore store = new ObjectStore(repository.root);
+            headTree = ((Commit) store.read(repository.headCommit())).getTree();
+            int count = Math.max(1, repository.files.size() / 20);
+            for (int i = 0; i < count; i++) {
+                Path file = repository.files.get(repository.random.nextInt(repository.files.size()));
+                Path other = repository.files.get(repository.random.nextInt(repository.files.size()));
+                changes.put(repository.root.relativize(file), Blob.hashFile(other));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ChangedFiles {
+
+        BenchmarkRepository repository;
+
+        @Setup(Level.Invocation)
+        public void changeFiles(BenchmarkRepository repository) throws Exception {
+            this.repository = repository;
+            repository.changeFiles(Math.max(1, repository.files.size() / 20));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Checkout {
+
+        BenchmarkRepository repository;
+        private boolean other;
+
+        @Setup
+        public void setup(BenchmarkRepository repository) {
+            this.repository = repository;
+        }
+
+        String nextBranch() {
+            other = !other;
+            return other ? BenchmarkRepository.OTHER_BRANCH : "master";
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Merge {
+
+        static final String LEFT = "left";
+        static final String RIGHT = "right";
+
+        BenchmarkRepository repository;
+        private ObjectStore store;
+        private String leftCommit;
+
+        /**
+         * Both branches change a twentieth of the files, the left one in the first half, the right one in
+         * the second half, so there are no conflicts.
+         */
+        @Setup
+        public void createBranches(BenchmarkRepository repository) throws Exception {
+            this.repository = repository;
+            store = new ObjectStore(repository.root);
+            RepositoryManager repositoryManager = repository.repositoryManager;
+            int count = Math.max(1, repository.files.size() / 20);
+            int half = repository.files.size() / 2;
+            repositoryManager.createBranch(LEFT);
+            repositoryManager.createBranch(RIGHT);
+            repositoryManager.checkout(RIGHT);
+            repository.changeFiles(count, half, repository.files.size());
+            repositoryManager.commit("right");
+            repositoryManager.checkout(LEFT);
+            repository.changeFiles(count, 0, Math.max(1, half));
+            repositoryManager.commit("left");
+            leftCommit = repository.headCommit();
+        }
+
+        /**
+         * Moves the left branch back to it's commit before the merge.
+         */
+        @Setup(Level.Invocation)
+        public void resetLeftBranch() throws Exception {
+            new Branch(store, LEFT, leftCommit);
+            repository.repositoryManager.checkout(LEFT);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package Application;
+
+import MyGitLibrary.Constants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daemon keeps managers of a repository and their caches in memory and executes commands sent by other processes,
+ * so they don't pay for starting JVM, configuring logger and reading the repository on every command.
+ *
+ * Daemon listens on a loopback socket, its port and a random token are written to .mygit/daemon. A client sends
+ * the token, it's working directory and arguments of the command, after that it receives everything the command
+ * printed until the daemon closes the connection. Every string is sent as in DataOutputStream.writeUTF, number of
+ * arguments is sent as int. The token is compared in constant time.
+ *
+ * The client is the usual console application. It only reads the daemon file and copies the output, so logger
+ * and managers aren't created, but the client still pays for starting JVM.
+ */
+class Daemon {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final String STOP = "--stop";
+
+    private final Path root;
+    private final String token;
+    private final ServerSocket serverSocket;
+
+    private Daemon(@NotNull Path root, @NotNull String token, @NotNull ServerSocket serverSocket) {
+        this.root = root;
+        this.token = token;
+        this.serverSocket = serverSocket;
+    }
+
+    /**
+     * Starts a daemon for repository in given directory and serves commands until it's stopped.
+     * @param root - root of the repository.
+     * @throws IOException - thrown if the socket can't be opened or the daemon file can't be written.
+     */
+    static void serve(@NotNull Path root) throws IOException {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        String token = String.format("%032x", new BigInteger(1, bytes));
+        ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Daemon daemon = new Daemon(root, token, serverSocket);
+        daemon.writeDaemonFile();
+        Thread shutdownHook = new Thread(daemon::removeDaemonFile);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        System.out.println("Daemon is listening on port " + serverSocket.getLocalPort() + ".");
+        try {
+            daemon.acceptConnections();
+        } finally {
+            daemon.removeDaemonFile();
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        System.out.println("Daemon stopped.");
+    }
+
+    /**
+     * Checks whether a daemon for repository in given directory accepts connections.
+     * @param directory - root of the repository.
+     * @return - true if the daemon is running.
+     */
+    static boolean isRunning(@NotNull Path directory) {
+        Address address = Address.read(directory);
+        if (address == null) {
+            return false;
+        }
+        try (Socket ignored = address.connect()) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sends a command to the daemon running in given directory and copies it's output.
+     * @param directory - working directory of the command.
+     * @param args - the command and it's arguments.
+     * @param out - stream where output of the command is copied.
+     * @return - false if there is no running daemon, so the command should be executed by this process.
+     */
+    static boolean send(@NotNull Path directory, @NotNull String[] args, @NotNull PrintStream out) {
+        Address address = Address.read(directory);
+        if (address == null) {
+            return false;
+        }
+        Socket socket;
+        try {
+            socket = address.connect();
+        } catch (IOException e) {
+            return false;
+        }
+        try (Socket ignored = socket;
+             DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+             InputStream response = socket.getInputStream()) {
+            request.writeUTF(address.token);
+            request.writeUTF(directory.toString());
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = response.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.flush();
+        } catch (IOException e) {
+            out.println("Connection to daemon was lost.");
+        }
+        return true;
+    }
+
+    private void acceptConnections() throws IOException {
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mygit-daemon-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if (serverSocket.isClosed()) {
+                        break;
+                    }
+                    throw e;
+                }
+                executor.execute(() -> handle(socket));
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void handle(@NotNull Socket socket) {
+        try (Socket ignored = socket;
+             DataInputStream request = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            if (!MessageDigest.isEqual(request.readUTF().getBytes(StandardCharsets.UTF_8),
+                    token.getBytes(StandardCharsets.UTF_8))) {
+                return;
+            }
+            Path directory = Paths.get(request.readUTF());
+            String[] args = new String[request.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = request.readUTF();
+            }
+            if (!directory.equals(root)) {
+                out.println("Daemon serves repository in " + root + ".");
+            } else if (args.length == 2 && args[0].equals("daemon") && args[1].equals(STOP)) {
+                out.println("Daemon is stopping.");
+                serverSocket.close();
+            } else {
+                try {
+                    Main.execute(args, root, out);
+                } catch (RuntimeException e) {
+                    out.println("Daemon failed to execute the command: " + e);
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void writeDaemonFile() throws IOException {
+        Path file = root.resolve(Constants.daemon);
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temporaryFile);
+        try {
+            Files.createFile(temporaryFile,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(temporaryFile);
+        }
+        Files.write(temporaryFile, (serverSocket.getLocalPort() + "\n" + token + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the daemon file, unless it was already replaced by another daemon.
+     */
+    private void removeDaemonFile() {
+        Address address = Address.read(root);
+        if (address != null && address.token.equals(token)) {
+            try {
+                Files.deleteIfExists(root.resolve(Constants.daemon));
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Port and token of a daemon read from the daemon file.
+     */
+    private static class Address {
+
+        private int port;
+        private String token;
+
+        private Address(int port, @NotNull String token) {
+            this.port = port;
+            this.token = token;
+        }
+
+        @Nullable static Address read(@NotNull Path directory) {
+            Path file = directory.resolve(Constants.daemon);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            try {
+                List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+                if (lines.size() < 2) {
+                    return null;
+                }
+                return new Address(Integer.parseInt(lines.get(0)), lines.get(1));
+            } catch (IOException | NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @NotNull Socket connect() throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
+        }
+    }
+}
@@ -1,36 +1,63 @@
 package Application;
 
+import MyGitLibrary.Constants;
 import MyGitLibrary.Exceptions.*;
+import MyGitLibrary.MyGitObjects.DiffHunk;
+import MyGitLibrary.MyGitObjects.FileDiff;
 import MyGitLibrary.MyGitObjects.LogCommitObject;
 import MyGitLibrary.MyGitObjects.LogObject;
+import MyGitLibrary.MyGitObjects.LogOptions;
+import MyGitLibrary.MyGitObjects.MergeObject;
+import MyGitLibrary.MyGitObjects.MetricsReport;
 import MyGitLibrary.MyGitObjects.RepositoryManager;
 import MyGitLibrary.MyGitObjects.StatusObject;
+import MyGitLibrary.MyGitObjects.StorageReport;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Simple console application that wraps work with MyGitLibrary.
  * Start the application with argument "help" to see list of commands.
+ *
+ * If a daemon is running in the repository, commands are sent to it, otherwise they are executed by this process.
  */
 public class Main {
 
     private static Path directory;
     private static RepositoryManager repositoryManager;
+    private static PrintStream out = System.out;
+    private static final Map<Path, RepositoryManager> managers = new HashMap<>();
 
     private enum Arguments {
         init("- initializes MyGit in current directory"),
-        add("\'path\' - add current version of file contained in 'path' to repository"),
+        add("\'path\' ... - add current versions of files contained in \'path\' to repository, " +
+                "\'path\' can be a file, a directory or a glob pattern like \'src/**.java\'"),
         branch("\'name\' - with empty name shows name of current branch, " +
                 "otherwise creates new branch with title \'name\'"),
-        merge("\'title\' - merge branch with name \'title\' into current branch"),
+        merge("\'title\' - merge branch with name \'title\' into current branch, files changed in both branches " +
+                "are merged line by line, conflicts should be fixed and committed"),
         commit("\'message\' - commit added files to current branch"),
         remove_repository("- remove repository in current directory"),
         remove_branch("\'title\' - remove branch with name \'title\'"),
         checkout("\'title\'- checkout branch or commit with name \'title\'"),
-        log("- show list of commits in current branch"),
+        log("[-n \'count\'] [--skip \'count\'] - show list of commits in current branch, " +
+                "with -n only \'count\' newest commits are shown, --skip omits \'count\' newest commits"),
+        diff("[--staged | \'from\' \'to\'] - show changes of files line by line: without arguments compares files " +
+                "on disk with the index, with --staged compares staged files with head commit, otherwise compares " +
+                "two branches or commits"),
         help("- print help"),
         reset("\'path\' - remove file contained in \'path\' from index, it won't be added on next commit"),
         rm("\'path\' - remove file contained in \'path\' from index and delete it from disk"),
@@ -40,7 +67,19 @@ public class Main {
                 "\tmodified - file was changed since head commit\n" +
                 "\tdeleted - file was deleted from disk\n" +
                 "\tunversioned - file neither staged for commit nor contained in head commit"),
-        clean("- deletes from disk all unversioned files");
+        clean("- deletes from disk all unversioned files"),
+        migrate("- rewrites objects saved by older versions of MyGit in current format"),
+        gc("- packs all objects into a single packfile, versions of the same file are delta-compressed"),
+        storage("- shows how much space is taken by files with equal content, which were saved more than once " +
+                "by older versions of MyGit"),
+        stats("[--json] [--reset] - shows time spent in every operation and it's phases and counters of objects " +
+                "and files processed by this process, it's useful with daemon, --json prints them as JSON, " +
+                "--reset sets them to zero after printing"),
+        sparse("[\'path\' ... | --disable] - without arguments shows patterns of sparse checkout, otherwise only " +
+                "files contained in given paths are checked out and walked by status and clean, " +
+                "--disable checks out the whole tree"),
+        daemon("[--stop] - starts a daemon that keeps repository in memory and executes commands sent from " +
+                "other processes, with --stop stops the running daemon");
 
         private String description;
 
@@ -51,26 +90,46 @@ public class Main {
 
     private static void checkCorrectness(String[] args) throws UnableToContinueException {
         if (args.length == 0) {
-            System.out.println("Provide some arguments.");
+            out.println("Provide some arguments.");
             throw new UnableToContinueException();
         }
         try {
             Arguments.valueOf(args[0]);
         } catch (IllegalArgumentException e) {
-            System.out.println("Unknown command.");
+            out.println("Unknown command.");
             throw new UnableToContinueException();
         }
     }
 
     public static void main(String[] args) {
+        Path workingDirectory = Paths.get(System.getProperty("user.dir"));
+        if (args.length == 1 && args[0].equals(Arguments.daemon.toString())) {
+            startDaemon(workingDirectory);
+            return;
+        }
+        if (Daemon.send(workingDirectory, args, System.out)) {
+            return;
+        }
+        execute(args, workingDirectory, System.out);
+    }
+
+    /**
+     * Executes a command. Commands are executed one at a time, managers of repositories are kept between them.
+     * @param args - the command and it's arguments.
+     * @param workingDirectory - directory relative to which paths are resolved.
+     * @param output - stream where results are printed.
+     */
+    static synchronized void execute(@NotNull String[] args, @NotNull Path workingDirectory,
+                                     @NotNull PrintStream output) {
+        out = output;
+        directory = workingDirectory;
+        repositoryManager = null;
         try {
             checkCorrectness(args);
         } catch (UnableToContinueException e) {
             return;
         }
 
-        directory = Paths.get(System.getProperty("user.dir"));
-
         switch (Arguments.valueOf(args[0])) {
             case help:
                 printHelp();
@@ -87,6 +146,9 @@ public class Main {
                 } catch (UnableToContinueException e) {
                     return;
                 }
+                if (repositoryManager == null) {
+                    return;
+                }
         }
 
         switch (Arguments.valueOf(args[0])) {
@@ -111,6 +173,9 @@ public class Main {
             case log:
                 commandLog(args);
                 break;
+            case diff:
+                commandDiff(args);
+                break;
             case reset:
                 commandReset(args);
                 break;
@@ -123,23 +188,42 @@ public class Main {
             case clean:
                 commandClean(args);
                 break;
+            case migrate:
+                commandMigrate(args);
+                break;
+            case gc:
+                commandGc(args);
+                break;
+            case storage:
+                commandStorage(args);
+                break;
+            case stats:
+                commandStats(args);
+                break;
+            case sparse:
+                commandSparse(args);
+                break;
+            case daemon:
+                commandDaemon(args);
+                break;
         }
     }
 
     private static void commandInit(String[] args) {
         if (args.length > 1) {
-            System.out.println("Too many arguments.");
+            out.println("Too many arguments.");
         }
+        managers.remove(directory);
         try {
             RepositoryManager.initRepository(directory);
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (RepositoryAlreadyExistsException e) {
-            System.out.println("RepositoryManager already exists in this directory.");
+            out.println("RepositoryManager already exists in this directory.");
         } catch (DirIOException e) {
-            System.out.println("Unable to create directory at " +
+            out.println("Unable to create directory at " +
                     e.getMessage() + "\n" +
                     "Check permissions and try again.");
         }
@@ -147,90 +231,108 @@ public class Main {
 
     private static void commandRemoveRepository(String[] args) {
         if (args.length > 1) {
-            System.out.println("Too many arguments.");
+            out.println("Too many arguments.");
         }
+        managers.remove(directory);
         try {
             RepositoryManager.removeRepository(directory);
         } catch (DirIOException e) {
-            System.out.println("Unable to delete directory at " +
+            out.println("Unable to delete directory at " +
                     e.getMessage() + "\n" +
                     "Check permissions and try again.");
         }
     }
 
     private static void getRepositoryManager() throws UnableToContinueException {
+        repositoryManager = managers.get(directory);
+        if (repositoryManager != null && Files.isDirectory(directory.resolve(Constants.myGitDirectory))) {
+            return;
+        }
+        managers.remove(directory);
         try {
             repositoryManager = RepositoryManager.getRepositoryManager(directory);
+            managers.put(directory, repositoryManager);
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (RepositoryWasNotInitializedException e) {
-            System.out.println("RepositoryManager in this directory wasn't initialized.");
+            out.println("RepositoryManager in this directory wasn't initialized.");
             throw new UnableToContinueException();
         } catch (MyGitFilesAreBrokenException e) {
-            System.out.println("MyGit files are broken.");
+            out.println("MyGit files are broken.");
             throw new UnableToContinueException();
         } catch (NotDirectoryException e) {
-            System.out.println("Pass a directory as an argument.");
+            out.println("Pass a directory as an argument.");
         } catch (WalkIOException e) {
-            System.out.println("Something went wrong during working with file in directory " +
+            out.println("Something went wrong during working with file in directory " +
                     e.getMessage() + "\n" +
                     "Check permissions and try again.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
         }
     }
 
     private static void commandAdd(String[] args) {
         if (args.length == 1) {
-            System.out.println("Too few arguments.");
+            out.println("Too few arguments.");
             return;
         }
-        if (args.length > 2) {
-            System.out.println("Too many arguments.");
-            return;
+        List<Path> paths = new ArrayList<>();
+        List<String> globs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (isGlob(args[i])) {
+                globs.add(args[i]);
+            } else {
+                paths.add(getPath(args[i]));
+            }
         }
 
         try {
-            repositoryManager.add(getPath(args[1]));
+            repositoryManager.add(paths, globs);
         } catch (FileInAnotherDirectoryException e) {
-            System.out.println("You're trying to add file from another directory.");
+            out.println("You're trying to add file from another directory.");
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (FileDoesntExistException e) {
-            System.out.println("File doesn't exist.");
-        } catch (IsDirectoryException e) {
-            System.out.println("You can add only files.");
+            out.println("File doesn't exist or no files match the pattern.");
+        } catch (WalkIOException e) {
+            out.println("Something went wrong during working with file in directory " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and try again.");
         } catch (IndexFileIsBrokenException e) {
-            System.out.println(".mygit/index file is broken.");
+            out.println(".mygit/index file is broken.");
         }
     }
 
     private static void commandCheckout(String[] args) {
         if (args.length == 1) {
-            System.out.println("Too few arguments.");
+            out.println("Too few arguments.");
             return;
         }
         if (args.length > 2) {
-            System.out.println("Too many arguments.");
+            out.println("Too many arguments.");
             return;
         }
 
         try {
             repositoryManager.checkout(args[1]);
         } catch (FileDoesntExistException e) {
-            System.out.println("There is no branch or commit with name \"" + args[1] + "\"");
+            out.println("There is no branch or commit with name \"" + args[1] + "\"");
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
         } catch (DirIOException e) {
-            System.out.println("Unable to create directory at " +
+            out.println("Unable to create directory at " +
                     e.getMessage() + "\n" +
                     "Check permissions and try again.");
         }
@@ -238,225 +340,324 @@ public class Main {
 
     private static void commandCommit(String[] args) {
         if (args.length == 1) {
-            System.out.println("Too few arguments.");
+            out.println("Too few arguments.");
             return;
         }
         if (args.length > 2) {
-            System.out.println("Too many arguments.");
+            out.println("Too many arguments.");
             return;
         }
 
         try {
             repositoryManager.commit(args[1]);
         } catch (IndexFileIsBrokenException e) {
-            System.out.println(".mygit/index file is broken.");
+            out.println(".mygit/index file is broken.");
         } catch (HeadFileIsBrokenException e) {
-            System.out.println(".mygit/HEAD file is broken.");
+            out.println(".mygit/HEAD file is broken.");
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
         }
     }
 
     private static void commandBranch(String[] args) {
         if (args.length == 1) {
             try {
-                System.out.println(repositoryManager.getCurrentBranchesName());
+                out.println(repositoryManager.getCurrentBranchesName());
             } catch (FileIOException e) {
-                System.out.println("Something went wrong during reading or writing to file " +
+                out.println("Something went wrong during reading or writing to file " +
                         e.getMessage() + "\n" +
                         "Check permissions and existence of file try again.");
             } catch (HeadFileIsBrokenException e) {
-                System.out.println(".mygit/HEAD file is broken.");
+                out.println(".mygit/HEAD file is broken.");
             } catch (ClassNotFoundException e) {
-                System.out.println("Application's .jar file is broken.");
+                out.println("Application's .jar file is broken.");
             }
             return;
         }
         if (args.length > 2) {
-            System.out.println("Too many arguments.");
+            out.println("Too many arguments.");
             return;
         }
         try {
             repositoryManager.createBranch(args[1]);
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (BranchAlreadyExistsException e) {
-            System.out.println("Branch with the name \"" + args[1] + "\" already exists.");
+            out.println("Branch with the name \"" + args[1] + "\" already exists.");
         } catch (HeadFileIsBrokenException e) {
-            System.out.println(".mygit/HEAD file is broken.");
+            out.println(".mygit/HEAD file is broken.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
         }
     }
 
     private static void commandRemoveBranch(String[] args) {
         if (args.length == 1) {
-            System.out.println("Too few arguments.");
+            out.println("Too few arguments.");
             return;
         }
         if (args.length > 2) {
-            System.out.println("Too many arguments.");
+            out.println("Too many arguments.");
             return;
         }
 
         try {
             repositoryManager.removeBranch(args[1]);
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (NotAbleToDeleteCurrentBranchException e) {
-            System.out.println("You can't delete current branch.");
+            out.println("You can't delete current branch.");
         } catch (HeadFileIsBrokenException e) {
-            System.out.println(".mygit/HEAD file is broken.");
+            out.println(".mygit/HEAD file is broken.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
         }
     }
 
     private static void commandMerge(String[] args) {
         if (args.length == 1) {
-            System.out.println("Too few arguments.");
+            out.println("Too few arguments.");
             return;
         }
         if (args.length > 2) {
-            System.out.println("Too many arguments.");
+            out.println("Too many arguments.");
             return;
         }
 
         try {
-            repositoryManager.merge(args[1]);
+            MergeObject merge = repositoryManager.merge(args[1]);
+            if (merge.isUpToDate()) {
+                out.println("Already up to date.");
+            }
+            for (Path path : merge.getConflicts()) {
+                out.println("Merge conflict in " + path);
+            }
+            if (!merge.getConflicts().isEmpty()) {
+                out.println("Fix conflicts, add the files and commit the result.");
+            }
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (BranchDoesntExistException e) {
-            System.out.println("There is no branch with name \"" + args[1] + "\"");
+            out.println("There is no branch with name \"" + args[1] + "\"");
         } catch (HeadFileIsBrokenException e) {
-            System.out.println(".mygit/HEAD file is broken.");
+            out.println(".mygit/HEAD file is broken.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
         } catch (DirIOException e) {
-            System.out.println("Unable to create directory at " +
+            out.println("Unable to create directory at " +
                     e.getMessage() + "\n" +
                     "Check permissions and try again.");
         }
     }
 
     private static void commandLog(String[] args) {
-        if (args.length > 1) {
-            System.out.println("Too many arguments.");
+        LogOptions options = new LogOptions();
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    out.println("Too few arguments.");
+                    return;
+                }
+                switch (args[i]) {
+                    case "-n":
+                        options.setLimit(Integer.parseInt(args[i + 1]));
+                        break;
+                    case "--skip":
+                        options.setSkip(Integer.parseInt(args[i + 1]));
+                        break;
+                    default:
+                        out.println("Unknown option " + args[i] + ".");
+                        return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            out.println("Number of commits should be a non-negative integer.");
             return;
         }
 
         try {
-            LogObject log = repositoryManager.log();
-            System.out.println("Current branch : " + log.getBranchName() + "\n");
+            LogObject log = repositoryManager.log(options);
+            out.println("Current branch : " + log.getBranchName() + "\n");
             for (LogCommitObject commit : log.getCommits()) {
-                System.out.println("commit : " + commit.getHash());
-                System.out.println(commit.getMessage());
-                System.out.println("Author : " + commit.getAuthor());
-                System.out.println("Date : " + commit.getDate());
-                System.out.println("");
+                out.println("commit : " + commit.getHash());
+                out.println(commit.getMessage());
+                out.println("Author : " + commit.getAuthor());
+                out.println("Date : " + commit.getDate());
+                out.println("");
             }
         } catch (HeadFileIsBrokenException e) {
-            System.out.println(".mygit/HEAD file is broken.");
+            out.println(".mygit/HEAD file is broken.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
+        }
+    }
+
+    private static void commandDiff(String[] args) {
+        if (args.length > 3) {
+            out.println("Too many arguments");
+            return;
+        }
+        if (args.length == 2 && !args[1].equals("--staged")) {
+            out.println("Too few arguments");
+            return;
+        }
+
+        try {
+            List<FileDiff> diffs;
+            if (args.length == 1) {
+                diffs = repositoryManager.diff();
+            } else if (args.length == 2) {
+                diffs = repositoryManager.diffStaged();
+            } else {
+                diffs = repositoryManager.diff(args[1], args[2]);
+            }
+            for (FileDiff diff : diffs) {
+                printFileDiff(diff);
+            }
+        } catch (HeadFileIsBrokenException e) {
+            out.println(".mygit/HEAD file is broken.");
+        } catch (FileIOException e) {
+            out.println("Something went wrong during reading or writing to file " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and existence of file try again.");
+        } catch (IndexFileIsBrokenException e) {
+            out.println(".mygit/index file is broken.");
+        } catch (FileDoesntExistException e) {
+            out.println("There is no branch or commit with name \"" + args[1] + "\" or \"" + args[2] + "\"");
+        } catch (ClassNotFoundException e) {
+            out.println("Application's .jar file is broken.");
+        }
+    }
+
+    private static void printFileDiff(@NotNull FileDiff diff) {
+        String path = directory.relativize(diff.getPath()).toString();
+        out.println("diff --mygit a/" + path + " b/" + path);
+        out.println("--- " + (diff.getOldHash() == null ? "/dev/null" : "a/" + path));
+        out.println("+++ " + (diff.getNewHash() == null ? "/dev/null" : "b/" + path));
+        if (diff.isBinary()) {
+            out.println("Binary files differ");
+            return;
+        }
+        for (DiffHunk hunk : diff.getHunks()) {
+            out.println(hunk.getHeader());
+            for (String line : hunk.getLines()) {
+                byte[] bytes = line.getBytes(StandardCharsets.ISO_8859_1);
+                out.write(bytes, 0, bytes.length);
+                if (!line.endsWith("\n")) {
+                    out.println();
+                    out.println("\\ No newline at end of file");
+                }
+            }
         }
     }
 
     private static void commandReset(String[] args) {
         if (args.length < 2) {
-            System.out.println("Too few arguments");
+            out.println("Too few arguments");
             return;
         }
         if (args.length > 2) {
-            System.out.println("Too many arguments");
+            out.println("Too many arguments");
             return;
         }
         try {
             repositoryManager.reset(getPath(args[1]));
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (IndexFileIsBrokenException e) {
-            System.out.println(".mygit/index file is broken.");
+            out.println(".mygit/index file is broken.");
         } catch (FileInAnotherDirectoryException e) {
-            System.out.println("You're trying to reset file from another directory.");
+            out.println("You're trying to reset file from another directory.");
         }
     }
 
     private static void commandRemove(String[] args) {
         if (args.length < 2) {
-            System.out.println("Too few arguments");
+            out.println("Too few arguments");
             return;
         }
         if (args.length > 2) {
-            System.out.println("Too many arguments");
+            out.println("Too many arguments");
             return;
         }
         try {
             repositoryManager.remove(getPath(args[1]));
         } catch (FileInAnotherDirectoryException e) {
-            System.out.println("You're trying to remove file from another directory.");
+            out.println("You're trying to remove file from another directory.");
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (IndexFileIsBrokenException e) {
-            System.out.println(".mygit/index file is broken.");
+            out.println(".mygit/index file is broken.");
         } catch (IsDirectoryException e) {
-            System.out.println("You're trying to remove directory instead of file.");
+            out.println("You're trying to remove directory instead of file.");
         }
     }
 
     private static void commandStatus(String[] args) {
         if (args.length > 1) {
-            System.out.println("Too many arguments");
+            out.println("Too many arguments");
             return;
         }
 
         try {
             StatusObject status = repositoryManager.status();
             for (Path path : status.getStaged()) {
-                System.out.println(path + " staged for commit");
+                out.println(path + " staged for commit");
             }
             for (Path path : status.getUnmodified()) {
-                System.out.println(path + " wasn't modified since head commit");
+                out.println(path + " wasn't modified since head commit");
             }
             for (Path path : status.getModified()) {
-                System.out.println(path + " was modified since head commit");
+                out.println(path + " was modified since head commit");
             }
             for (Path path : status.getDeleted()) {
-                System.out.println(path + " was deleted");
+                out.println(path + " was deleted");
             }
             for (Path path : status.getUnversioned()) {
-                System.out.println(path + " isn't versioned");
+                out.println(path + " isn't versioned");
             }
         } catch (HeadFileIsBrokenException e) {
-            System.out.println(".mygit/HEAD file is broken.");
+            out.println(".mygit/HEAD file is broken.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (IndexFileIsBrokenException e) {
-            System.out.println(".mygit/index file is broken.");
+            out.println(".mygit/index file is broken.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
         } catch (WalkIOException e) {
-            System.out.println("Something went wrong during working with file in directory " +
+            out.println("Something went wrong during working with file in directory " +
                     e.getMessage() + "\n" +
                     "Check permissions and try again.");
         }
@@ -464,35 +665,205 @@ public class Main {
 
     private static void commandClean(String[] args) {
         if (args.length > 1) {
-            System.out.println("Too many arguments");
+            out.println("Too many arguments");
             return;
         }
         try {
             repositoryManager.clean();
         } catch (HeadFileIsBrokenException e) {
-            System.out.println(".mygit/HEAD file is broken.");
+            out.println(".mygit/HEAD file is broken.");
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
         } catch (FileIOException e) {
-            System.out.println("Something went wrong during reading or writing to file " +
+            out.println("Something went wrong during reading or writing to file " +
                     e.getMessage() + "\n" +
                     "Check permissions and existence of file try again.");
         } catch (IndexFileIsBrokenException e) {
-            System.out.println(".mygit/index file is broken.");
+            out.println(".mygit/index file is broken.");
+        } catch (ClassNotFoundException e) {
+            out.println("Application's .jar file is broken.");
+        } catch (WalkIOException e) {
+            out.println("Something went wrong during working with file in directory " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and try again.");
+        }
+    }
+
+    private static void commandMigrate(String[] args) {
+        if (args.length > 1) {
+            out.println("Too many arguments");
+            return;
+        }
+        try {
+            repositoryManager.migrateObjects();
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
+        } catch (FileIOException e) {
+            out.println("Something went wrong during reading or writing to file " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and existence of file try again.");
+        } catch (ClassNotFoundException e) {
+            out.println("Application's .jar file is broken.");
+        } catch (WalkIOException e) {
+            out.println("Something went wrong during working with file in directory " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and try again.");
+        }
+    }
+
+    private static void commandGc(String[] args) {
+        if (args.length > 1) {
+            out.println("Too many arguments");
+            return;
+        }
+        try {
+            repositoryManager.gc();
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
+        } catch (FileIOException e) {
+            out.println("Something went wrong during reading or writing to file " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and existence of file try again.");
+        } catch (ClassNotFoundException e) {
+            out.println("Application's .jar file is broken.");
+        } catch (WalkIOException e) {
+            out.println("Something went wrong during working with file in directory " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and try again.");
+        }
+    }
+
+    private static void commandSparse(String[] args) {
+        try {
+            if (args.length == 1) {
+                List<String> patterns = repositoryManager.getSparseCheckout();
+                if (patterns.isEmpty()) {
+                    out.println("Sparse checkout is disabled.");
+                }
+                patterns.forEach(out::println);
+                return;
+            }
+            if (args.length == 2 && args[1].equals("--disable")) {
+                repositoryManager.setSparseCheckout(new ArrayList<>());
+            } else {
+                repositoryManager.setSparseCheckout(Arrays.asList(args).subList(1, args.length));
+            }
+        } catch (RepositoryIsLockedException e) {
+            out.println("Another MyGit process is working with this repository, try again later.");
+        } catch (FileIOException e) {
+            out.println("Something went wrong during reading or writing to file " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and existence of file try again.");
+        } catch (FileInAnotherDirectoryException e) {
+            out.println("Patterns should point to paths inside of the repository.");
+        } catch (HeadFileIsBrokenException e) {
+            out.println(".mygit/HEAD file is broken.");
         } catch (ClassNotFoundException e) {
-            System.out.println("Application's .jar file is broken.");
+            out.println("Application's .jar file is broken.");
+        } catch (DirIOException e) {
+            out.println("Unable to create directory at " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and try again.");
+        }
+    }
+
+    private static void commandStats(String[] args) {
+        boolean json = false;
+        boolean reset = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--json")) {
+                json = true;
+            } else if (args[i].equals("--reset")) {
+                reset = true;
+            } else {
+                out.println("Unknown argument " + args[i]);
+                return;
+            }
+        }
+        MetricsReport report = repositoryManager.metrics();
+        if (json) {
+            out.println(report.toJson());
+        } else {
+            out.println("Counters :");
+            report.getCounters().forEach((name, value) -> out.println("\t" + name + " : " + value));
+            out.println("Timers :");
+            report.getTimers().forEach((name, timer) -> out.println("\t" + name + " : count " + timer.getCount() +
+                    ", total " + formatNanos(timer.getTotalNanos()) +
+                    ", average " + formatNanos(timer.getAverageNanos()) +
+                    ", max " + formatNanos(timer.getMaxNanos())));
+        }
+        if (reset) {
+            repositoryManager.resetMetrics();
+        }
+    }
+
+    private static String formatNanos(long nanos) {
+        return String.format(Locale.ROOT, "%.3f ms", nanos / 1e6);
+    }
+
+    private static void commandStorage(String[] args) {
+        if (args.length > 1) {
+            out.println("Too many arguments");
+            return;
+        }
+        try {
+            StorageReport report = repositoryManager.storageReport();
+            out.println("Blobs : " + report.getBlobCount() + " (" + report.getNamedBlobCount() +
+                    " saved by older versions)");
+            out.println("Different contents : " + report.getUniqueContentCount());
+            out.println("Total size : " + report.getTotalSize() + " bytes");
+            out.println("Size without duplicates : " + report.getUniqueSize() + " bytes");
+            out.println("Taken by duplicates : " + report.getDuplicateSize() + " bytes");
+        } catch (FileIOException e) {
+            out.println("Something went wrong during reading or writing to file " +
+                    e.getMessage() + "\n" +
+                    "Check permissions and existence of file try again.");
+        } catch (ClassNotFoundException e) {
+            out.println("Application's .jar file is broken.");
         } catch (WalkIOException e) {
-            System.out.println("Something went wrong during working with file in directory " +
+            out.println("Something went wrong during working with file in directory " +
                     e.getMessage() + "\n" +
                     "Check permissions and try again.");
         }
     }
 
+    private static void startDaemon(@NotNull Path workingDirectory) {
+        if (!Files.isDirectory(workingDirectory.resolve(Constants.myGitDirectory))) {
+            System.out.println("RepositoryManager in this directory wasn't initialized.");
+            return;
+        }
+        if (Daemon.isRunning(workingDirectory)) {
+            System.out.println("Daemon is already running.");
+            return;
+        }
+        try {
+            Daemon.serve(workingDirectory);
+        } catch (IOException e) {
+            System.out.println("Unable to start daemon in " + workingDirectory + ": " + e.getMessage());
+        }
+    }
+
+    private static void commandDaemon(String[] args) {
+        if (args.length > 2 || args.length == 2 && !args[1].equals("--stop")) {
+            out.println("Unknown arguments.");
+        } else if (args.length == 2) {
+            out.println("Daemon isn't running.");
+        } else {
+            out.println("Daemon is already running.");
+        }
+    }
+
     private static void printHelp() {
         for (Arguments arg : Arguments.values()) {
-            System.out.println(arg.toString() + " " + arg.description);
+            out.println(arg.toString() + " " + arg.description);
         }
     }
 
+    private static boolean isGlob(@NotNull String argument) {
+        return argument.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0);
+    }
+
     private static Path getPath(@NotNull String path) {
-        return Paths.get(path).toAbsolutePath().normalize();
+        return directory.resolve(path).normalize();
     }
 }
\ No newline at end of file
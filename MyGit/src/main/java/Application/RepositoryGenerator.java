@@ -0,0 +1,360 @@
+package Application;
+
+import MyGitLibrary.Constants;
+import MyGitLibrary.MyGitObjects.MergeObject;
+import MyGitLibrary.MyGitObjects.RepositoryManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates synthetic repositories for load testing through the public API of RepositoryManager.
+ *
+ * Files are placed in a directory tree where every directory has at most fanOut children. Sizes of files have
+ * log-normal distribution around the median size. Every commit changes a few lines in some files and sometimes adds
+ * a new file. Commits are made on master and on other branches in turn, master merges a random branch with given
+ * frequency, conflicts are committed as they are. Everything is chosen by a random generator with given seed, so
+ * with the same options the same files and history are generated, only dates and hashes of commits differ.
+ *
+ * Usage: RepositoryGenerator generate 'directory' [--seed n] [--files n] [--fan-out n] [--file-size bytes]
+ * [--size-sigma x] [--commits n] [--branches n] [--merge-frequency x] [--changed-files n]
+ * or RepositoryGenerator replay 'snapshots' 'directory'
+ */
+public class RepositoryGenerator {
+
+    private static final int LINE_LENGTH = 64;
+    private static final double NEW_FILE_PROBABILITY = 0.1;
+
+    private long seed = 1;
+    private int fileCount = 1000;
+    private int fanOut = 16;
+    private int fileSize = 4096;
+    private double fileSizeSigma = 1;
+    private int commitCount = 100;
+    private int branchCount = 2;
+    private double mergeFrequency = 0.1;
+    private int changedFiles = 10;
+
+    private Random random;
+    private int depth;
+    private int nextFile;
+
+    @NotNull public RepositoryGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    @NotNull public RepositoryGenerator setFileCount(int fileCount) {
+        this.fileCount = fileCount;
+        return this;
+    }
+
+    /**
+     * @param fanOut - maximal number of files and subdirectories in a directory, at least 2.
+     */
+    @NotNull public RepositoryGenerator setFanOut(int fanOut) {
+        this.fanOut = Math.max(2, fanOut);
+        return this;
+    }
+
+    /**
+     * @param fileSize - median size of a file in bytes.
+     */
+    @NotNull public RepositoryGenerator setFileSize(int fileSize) {
+        this.fileSize = fileSize;
+        return this;
+    }
+
+    /**
+     * @param fileSizeSigma - standard deviation of logarithm of a file size, 0 makes all files of the median size.
+     */
+    @NotNull public RepositoryGenerator setFileSizeSigma(double fileSizeSigma) {
+        this.fileSizeSigma = fileSizeSigma;
+        return this;
+    }
+
+    /**
+     * @param commitCount - number of commits made after the initial one, merges excluded.
+     */
+    @NotNull public RepositoryGenerator setCommitCount(int commitCount) {
+        this.commitCount = commitCount;
+        return this;
+    }
+
+    /**
+     * @param branchCount - number of branches besides master, they are created from the initial commit.
+     */
+    @NotNull public RepositoryGenerator setBranchCount(int branchCount) {
+        this.branchCount = branchCount;
+        return this;
+    }
+
+    /**
+     * @param mergeFrequency - probability that a commit on master is followed by a merge of a random branch.
+     */
+    @NotNull public RepositoryGenerator setMergeFrequency(double mergeFrequency) {
+        this.mergeFrequency = mergeFrequency;
+        return this;
+    }
+
+    /**
+     * @param changedFiles - number of files changed by every commit.
+     */
+    @NotNull public RepositoryGenerator setChangedFiles(int changedFiles) {
+        this.changedFiles = Math.max(1, changedFiles);
+        return this;
+    }
+
+    /**
+     * @param number - number of a branch from 0 to branchCount - 1.
+     * @return - name of the branch in generated repositories.
+     */
+    @NotNull public static String getBranchName(int number) {
+        return "branch" + number;
+    }
+
+    /**
+     * Generates a repository in given directory. The directory should not contain a repository.
+     * @param root - directory of the repository, it's created if it doesn't exist.
+     * @return - manager of the generated repository, master is checked out.
+     * @throws Exception - thrown if MyGit failed to save files or commits.
+     */
+    @NotNull public RepositoryManager generate(@NotNull Path root) throws Exception {
+        random = new Random(seed);
+        depth = 0;
+        for (long capacity = fanOut; capacity < fileCount; capacity *= fanOut) {
+            depth++;
+        }
+        nextFile = 0;
+        Files.createDirectories(root);
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        for (int i = 0; i < fileCount; i++) {
+            createFile(root);
+        }
+        repositoryManager.add(root);
+        repositoryManager.commit("initial commit");
+        List<String> branches = new ArrayList<>();
+        branches.add("master");
+        for (int i = 0; i < branchCount; i++) {
+            repositoryManager.createBranch(getBranchName(i));
+            branches.add(getBranchName(i));
+        }
+        String current = "master";
+        for (int i = 0; i < commitCount; i++) {
+            String branch = branches.get(random.nextInt(branches.size()));
+            if (!branch.equals(current)) {
+                repositoryManager.checkout(branch);
+                current = branch;
+            }
+            repositoryManager.add(changeFiles(root));
+            repositoryManager.commit("commit " + i + " on " + branch);
+            if (branch.equals("master") && branchCount > 0 && random.nextDouble() < mergeFrequency) {
+                merge(repositoryManager, getBranchName(random.nextInt(branchCount)));
+            }
+        }
+        if (!current.equals("master")) {
+            repositoryManager.checkout("master");
+        }
+        return repositoryManager;
+    }
+
+    /**
+     * Replays history from a directory of snapshots. Every subdirectory is a full copy of the working tree,
+     * they are committed in order of their names with names as messages. MyGit doesn't record deletions in
+     * commits, so files missing from a snapshot are only deleted from disk.
+     * @param snapshots - directory containing snapshots.
+     * @param root - directory of the repository, it's created if it doesn't exist.
+     * @return - manager of the repository.
+     * @throws Exception - thrown if MyGit failed to save files or commits.
+     */
+    @NotNull public static RepositoryManager replay(@NotNull Path snapshots, @NotNull Path root) throws Exception {
+        Files.createDirectories(root);
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        List<Path> directories;
+        try (Stream<Path> children = Files.list(snapshots)) {
+            directories = children.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        for (Path snapshot : directories) {
+            List<Path> changed = new ArrayList<>();
+            List<Path> snapshotFiles = listFiles(snapshot);
+            for (Path file : snapshotFiles) {
+                Path target = root.resolve(snapshot.relativize(file).toString());
+                if (Files.isRegularFile(target) && Files.size(target) == Files.size(file)
+                        && Arrays.equals(Files.readAllBytes(target), Files.readAllBytes(file))) {
+                    continue;
+                }
+                Files.createDirectories(target.getParent());
+                Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+                changed.add(target);
+            }
+            Set<Path> kept = snapshotFiles.stream().map(file -> root.resolve(snapshot.relativize(file).toString()))
+                    .collect(Collectors.toSet());
+            for (Path file : listFiles(root)) {
+                if (!kept.contains(file)) {
+                    Files.delete(file);
+                }
+            }
+            if (!changed.isEmpty()) {
+                repositoryManager.add(changed);
+            }
+            repositoryManager.commit(snapshot.getFileName().toString());
+        }
+        return repositoryManager;
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length == 3 && args[0].equals("replay")) {
+                replay(Paths.get(args[1]), Paths.get(args[2]));
+            } else if (args.length >= 2 && args.length % 2 == 0 && args[0].equals("generate")) {
+                RepositoryGenerator generator = new RepositoryGenerator();
+                for (int i = 2; i < args.length; i += 2) {
+                    generator.setOption(args[i], args[i + 1]);
+                }
+                generator.generate(Paths.get(args[1]));
+            } else {
+                System.out.println("Usage: generate 'directory' [--seed n] [--files n] [--fan-out n] " +
+                        "[--file-size bytes] [--size-sigma x] [--commits n] [--branches n] [--merge-frequency x] " +
+                        "[--changed-files n]\n" +
+                        "or: replay 'snapshots' 'directory'");
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Generation failed: " + e);
+        }
+    }
+
+    private void setOption(@NotNull String option, @NotNull String value) {
+        try {
+            switch (option) {
+                case "--seed":
+                    setSeed(Long.parseLong(value));
+                    break;
+                case "--files":
+                    setFileCount(Integer.parseInt(value));
+                    break;
+                case "--fan-out":
+                    setFanOut(Integer.parseInt(value));
+                    break;
+                case "--file-size":
+                    setFileSize(Integer.parseInt(value));
+                    break;
+                case "--size-sigma":
+                    setFileSizeSigma(Double.parseDouble(value));
+                    break;
+                case "--commits":
+                    setCommitCount(Integer.parseInt(value));
+                    break;
+                case "--branches":
+                    setBranchCount(Integer.parseInt(value));
+                    break;
+                case "--merge-frequency":
+                    setMergeFrequency(Double.parseDouble(value));
+                    break;
+                case "--changed-files":
+                    setChangedFiles(Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong value of " + option + ": " + value);
+        }
+    }
+
+    /**
+     * Merges the branch into master, conflicts are committed with their markers.
+     */
+    private void merge(@NotNull RepositoryManager repositoryManager, @NotNull String branch) throws Exception {
+        MergeObject merge = repositoryManager.merge(branch);
+        if (!merge.getConflicts().isEmpty()) {
+            repositoryManager.add(merge.getConflicts());
+            repositoryManager.commit("merge " + branch + " with conflicts");
+        }
+    }
+
+    @NotNull private Path createFile(@NotNull Path root) throws IOException {
+        int number = nextFile++;
+        Path directory = root;
+        int index = number / fanOut;
+        List<String> names = new ArrayList<>();
+        for (int level = 0; level < depth; level++) {
+            names.add("dir" + index % fanOut);
+            index /= fanOut;
+        }
+        Collections.reverse(names);
+        for (String name : names) {
+            directory = directory.resolve(name);
+        }
+        Files.createDirectories(directory);
+        Path file = directory.resolve("file" + number + ".txt");
+        int size = (int) Math.min(Integer.MAX_VALUE / 2, Math.round(fileSize * Math.exp(fileSizeSigma *
+                random.nextGaussian())));
+        StringBuilder content = new StringBuilder(size);
+        while (content.length() < size) {
+            content.append(line());
+        }
+        content.setLength(size);
+        Files.write(file, content.toString().getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    /**
+     * Changes a few lines in random files and sometimes creates a new file.
+     * @return - changed files.
+     */
+    @NotNull private List<Path> changeFiles(@NotNull Path root) throws IOException {
+        List<Path> files = listFiles(root);
+        List<Path> changed = new ArrayList<>();
+        for (int i = 0; i < changedFiles && !files.isEmpty(); i++) {
+            Path file = files.get(random.nextInt(files.size()));
+            List<String> lines = new ArrayList<>(Files.readAllLines(file, StandardCharsets.US_ASCII));
+            int position = random.nextInt(lines.size() + 1);
+            int removed = Math.min(lines.size() - position, random.nextInt(3));
+            lines.subList(position, position + removed).clear();
+            for (int j = random.nextInt(3); j >= 0; j--) {
+                lines.add(position, line().trim());
+            }
+            Files.write(file, lines, StandardCharsets.US_ASCII);
+            changed.add(file);
+        }
+        if (random.nextDouble() < NEW_FILE_PROBABILITY) {
+            changed.add(createFile(root));
+        }
+        return changed;
+    }
+
+    @NotNull private String line() {
+        char[] line = new char[LINE_LENGTH];
+        for (int i = 0; i < line.length - 1; i++) {
+            line[i] = (char) ('a' + random.nextInt(26));
+        }
+        line[line.length - 1] = '\n';
+        return new String(line);
+    }
+
+    /**
+     * @return - regular files in the directory and it's subdirectories except MyGit's directory, sorted.
+     */
+    @NotNull private static List<Path> listFiles(@NotNull Path directory) throws IOException {
+        Path myGitDirectory = directory.resolve(Constants.myGitDirectory);
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(file -> !file.startsWith(myGitDirectory) && Files.isRegularFile(file))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -9,8 +9,14 @@ import java.nio.file.Paths;
 public class Constants {
     public static final Path myGitDirectory = Paths.get(".mygit");
     public static final Path objectsDirectory = myGitDirectory.resolve("MyGitObjects");
+    public static final Path packsDirectory = myGitDirectory.resolve("packs");
     public static final Path branchesDirectory = myGitDirectory.resolve("branches");
     public static final Path index = myGitDirectory.resolve("index");
     public static final Path head = myGitDirectory.resolve("HEAD");
+    public static final Path mergeHead = myGitDirectory.resolve("MERGE_HEAD");
+    public static final Path commitGraph = myGitDirectory.resolve("commit-graph");
+    public static final Path lock = myGitDirectory.resolve("repository.lock");
+    public static final Path daemon = myGitDirectory.resolve("daemon");
+    public static final Path sparseCheckout = myGitDirectory.resolve("sparse-checkout");
     public static final Path logsDirectory = myGitDirectory.resolve("logs");
 }
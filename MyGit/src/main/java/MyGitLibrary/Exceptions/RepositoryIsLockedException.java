@@ -0,0 +1,10 @@
+package MyGitLibrary.Exceptions;
+
+/**
+ * Thrown if another process didn't release lock of a repository in time.
+ */
+public class RepositoryIsLockedException extends FileIOException {
+    public RepositoryIsLockedException(String s) {
+        super(s);
+    }
+}
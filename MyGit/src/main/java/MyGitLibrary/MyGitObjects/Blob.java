@@ -2,19 +2,55 @@ package MyGitLibrary.MyGitObjects;
 
 import MyGitLibrary.Exceptions.FileIOException;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.Serializable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 
 /**
  * Class that represents a file in hierarchy of VCS.
+ * Blobs that are read from disk don't load their content until it's needed. Content can be streamed
+ * directly from the object store, so it never has to be held in memory.
+ * Files are hashed and saved in a single pass through a small buffer, so memory used for that doesn't depend
+ * on size of files.
+ *
+ * Hash of a blob depends only on it's content, names of files are stored in trees, so equal files are stored once
+ * regardless of their paths. Blobs saved by older versions of MyGit were hashed together with name of the file,
+ * which is still stored in them, such blobs are called named.
  */
-class Blob implements MyGitObject, Serializable {
+class Blob implements MyGitObject {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Largest content that can be loaded into an array. Larger blobs can only be streamed.
+     */
+    private static final long MAX_CONTENT_IN_MEMORY = Integer.MAX_VALUE - 8;
+
+    /**
+     * Every thread reads files into it's own direct buffer and reuses it for all files.
+     */
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    /**
+     * Streams accept only arrays, so content is copied from the direct buffer into this one before being written.
+     */
+    private static final ThreadLocal<byte[]> WRITE_BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private ObjectStore store;
     private String fileName;
     private String hash;
     private byte[] content;
+    private long contentLength;
 
     @Override
     public String getType() {
@@ -26,25 +62,256 @@ class Blob implements MyGitObject, Serializable {
         return hash;
     }
 
+    /**
+     * @return - name of the file, which is part of identity of a named blob, or empty string for other blobs.
+     */
     String getFileName() {
         return fileName;
     }
 
-    byte[] getContent() {
-        return content;
+    boolean isNamed() {
+        return !fileName.isEmpty();
+    }
+
+    long getContentLength() {
+        return contentLength;
+    }
+
+    boolean isContentLoaded() {
+        return content != null;
+    }
+
+    int getContentSize() {
+        return content == null ? 0 : content.length;
     }
 
-    Blob(@NotNull Path root, @NotNull byte[] content, @NotNull String fileName) throws FileIOException {
+    /**
+     * Reads the whole content of the blob into memory. The content isn't kept in the blob, since blobs are shared
+     * through the object cache, which accounts only for the content they had when they were cached. Prefer
+     * openContent for large files.
+     * @return - content of the blob.
+     * @throws FileIOException - thrown if something went wrong during reading from the object store or the content
+     * is too large to fit into an array.
+     */
+    byte[] getContent() throws FileIOException {
+        if (content != null) {
+            return content;
+        }
+        if (contentLength > MAX_CONTENT_IN_MEMORY) {
+            throw new FileIOException(hash);
+        }
+        try (InputStream inputStream = openContent()) {
+            return IOUtils.toByteArray(inputStream);
+        } catch (IOException e) {
+            throw new FileIOException(hash);
+        }
+    }
+
+    /**
+     * Loads the content and keeps it in the blob, so it's available after the object is overwritten in the store.
+     * Should be called only before the blob is cached.
+     * @throws FileIOException - thrown if something went wrong during reading from the object store.
+     */
+    void loadContent() throws FileIOException {
+        content = getContent();
+    }
+
+    Blob(@NotNull ObjectStore store, @NotNull byte[] content) throws FileIOException {
+        this.store = store;
         this.content = content;
+        this.contentLength = content.length;
+        this.fileName = "";
+        this.hash = DigestUtils.sha1Hex(content);
+        Metrics.add(Metrics.BYTES_HASHED, content.length);
+        store.write(this);
+    }
+
+    /**
+     * Saves a file as a blob. The file is read once: it's hashed and written to the object store at the same time,
+     * it's content is never held in memory.
+     * @param store - store the blob is written to.
+     * @param path - path to the file.
+     * @return - the blob, it's content isn't loaded.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files or the file was
+     * changed while it was read.
+     */
+    @NotNull static Blob fromFile(@NotNull ObjectStore store, @NotNull Path path) throws FileIOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            String hash = store.writeStreamed(out -> {
+                DataOutputStream dataOut = new DataOutputStream(out);
+                ObjectCodec.writeHeader(dataOut, BLOB, Integer.BYTES + Long.BYTES + size);
+                ObjectCodec.writeString(dataOut, "");
+                dataOut.writeLong(size);
+                MessageDigest digest = DigestUtils.getSha1Digest();
+                if (readChannel(channel, digest, dataOut) != size) {
+                    throw new IOException("File was changed while being read");
+                }
+                dataOut.flush();
+                return ObjectCodec.bytesToHash(digest.digest());
+            });
+            return new Blob(store, hash, "", size);
+        } catch (IOException e) {
+            throw new FileIOException(path.toString());
+        }
+    }
+
+    /**
+     * Creates a blob that was read from disk. It isn't written again.
+     */
+    Blob(@NotNull String hash, @NotNull String fileName, @NotNull byte[] content) {
+        this.hash = hash;
         this.fileName = fileName;
-        updateHash();
-        MyGitObject.write(this, root);
+        this.content = content;
+        this.contentLength = content.length;
+    }
+
+    private Blob(@NotNull ObjectStore store, @NotNull String hash, @NotNull String fileName, long contentLength) {
+        this.store = store;
+        this.hash = hash;
+        this.fileName = fileName;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Opens a stream over the content of the blob. Content is inflated from the object store while
+     * the stream is read.
+     * @return - stream containing content of the blob.
+     * @throws IOException - thrown if something went wrong during opening the object.
+     */
+    InputStream openContent() throws IOException {
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        DataInputStream inputStream = new DataInputStream(store.open(hash));
+        try {
+            ObjectCodec.readHeader(inputStream);
+            ObjectCodec.readString(inputStream);
+            inputStream.readLong();
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+        return inputStream;
+    }
+
+    /**
+     * Writes content of the blob to the file, replacing it if it exists.
+     * @param path - file to write to.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     */
+    void writeContentTo(@NotNull Path path) throws FileIOException {
+        try (InputStream inputStream = openContent()) {
+            Files.copy(inputStream, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new FileIOException(path.toString());
+        }
+    }
+
+    @Override
+    public void writePayload(@NotNull DataOutputStream out) throws IOException {
+        byte[] bytes = getContentForWriting();
+        ObjectCodec.writeString(out, fileName);
+        out.writeLong(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Content is the last field of the payload, so it's left in the stream and read only when needed. It's length
+     * isn't limited, since content is streamed.
+     */
+    static Blob readPayload(@NotNull ObjectStore store, @NotNull String hash, @NotNull DataInputStream in)
+            throws IOException {
+        String fileName = ObjectCodec.readString(in);
+        long length = in.readLong();
+        if (length < 0) {
+            throw new IOException("Wrong length of blob's content");
+        }
+        return new Blob(store, hash, fileName, length);
+    }
+
+    /**
+     * Computes hash that a blob created from the file would have without loading the file into memory.
+     * @param path - path to the file.
+     * @return - hash of the file.
+     * @throws FileIOException - thrown if something went wrong during reading the file.
+     */
+    static String hashFile(@NotNull Path path) throws FileIOException {
+        return hashFile(path, "");
+    }
+
+    /**
+     * Computes hash that a named blob with given name and content of the file would have.
+     * @param path - path to the file.
+     * @param fileName - name stored in the blob.
+     * @return - hash of the file with the name.
+     * @throws FileIOException - thrown if something went wrong during reading the file.
+     */
+    static String hashFile(@NotNull Path path, @NotNull String fileName) throws FileIOException {
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            readChannel(channel, digest, null);
+        } catch (IOException e) {
+            throw new FileIOException(path.toString());
+        }
+        digest.update(fileName.getBytes());
+        return ObjectCodec.bytesToHash(digest.digest());
+    }
+
+    /**
+     * Computes hash of content of the blob, which differs from hash of the blob only for named blobs. Content
+     * of other blobs isn't read.
+     * @return - hash of the content.
+     * @throws FileIOException - thrown if something went wrong during reading from the object store.
+     */
+    @NotNull String getContentHash() throws FileIOException {
+        if (!isNamed()) {
+            return hash;
+        }
+        try (InputStream inputStream = openContent()) {
+            return DigestUtils.sha1Hex(inputStream);
+        } catch (IOException e) {
+            throw new FileIOException(hash);
+        }
+    }
+
+    /**
+     * Reads the channel till the end through the buffer of current thread.
+     * @param channel - channel to read from.
+     * @param digest - digest that is updated with all read bytes.
+     * @param out - stream to which all read bytes are written or null if they are only hashed.
+     * @return - number of read bytes.
+     * @throws IOException - thrown if something went wrong during reading or writing.
+     */
+    private static long readChannel(@NotNull FileChannel channel, @NotNull MessageDigest digest,
+                                    @Nullable OutputStream out) throws IOException {
+        ByteBuffer buffer = READ_BUFFER.get();
+        byte[] array = WRITE_BUFFER.get();
+        long total = 0;
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            int length = buffer.remaining();
+            total += length;
+            if (out == null) {
+                digest.update(buffer);
+            } else {
+                buffer.get(array, 0, length);
+                digest.update(array, 0, length);
+                out.write(array, 0, length);
+            }
+            buffer.clear();
+        }
+        Metrics.increment(Metrics.FILES_HASHED);
+        Metrics.add(Metrics.BYTES_HASHED, total);
+        return total;
     }
 
-    private void updateHash() {
-        byte[] array = new byte[content.length + fileName.getBytes().length];
-        System.arraycopy(content, 0, array, 0, content.length);
-        System.arraycopy(fileName.getBytes(), 0, array, content.length, fileName.getBytes().length);
-        hash = DigestUtils.sha1Hex(array);
+    private byte[] getContentForWriting() throws IOException {
+        try {
+            return getContent();
+        } catch (FileIOException e) {
+            throw new IOException(e.getMessage());
+        }
     }
 }
@@ -4,16 +4,16 @@ import MyGitLibrary.Exceptions.FileIOException;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.Serializable;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * Class that represents a branch.
  */
-class Branch implements MyGitObject, Serializable {
+class Branch implements MyGitObject {
 
-    private String root;
+    private ObjectStore store;
     private String hash;
     private String name;
     private String commit;
@@ -36,18 +36,40 @@ class Branch implements MyGitObject, Serializable {
         return commit;
     }
 
-    Branch(@NotNull Path root, @NotNull String name, @NotNull String commit) throws FileIOException {
-        this.root = root.toString();
+    Branch(@NotNull ObjectStore store, @NotNull String name, @NotNull String commit) throws FileIOException {
+        this.store = store;
         this.name = name;
         this.commit = commit;
         updateHash();
-        MyGitObject.write(this, root);
+        store.write(this);
+    }
+
+    /**
+     * Creates a branch that was read from disk. It isn't written again.
+     */
+    Branch(@NotNull ObjectStore store, @NotNull String hash, @NotNull String name, @NotNull String commit) {
+        this.store = store;
+        this.hash = hash;
+        this.name = name;
+        this.commit = commit;
     }
 
     void setCommit(@NotNull String commit) throws FileIOException {
         this.commit = commit;
         updateHash();
-        MyGitObject.write(this, Paths.get(root));
+        store.write(this);
+    }
+
+    @Override
+    public void writePayload(@NotNull DataOutputStream out) throws IOException {
+        ObjectCodec.writeString(out, name);
+        ObjectCodec.writeHash(out, commit);
+    }
+
+    static Branch readPayload(@NotNull ObjectStore store, @NotNull DataInputStream in) throws IOException {
+        String name = ObjectCodec.readString(in);
+        String commit = ObjectCodec.readHash(in);
+        return new Branch(store, DigestUtils.sha1Hex((name + commit).getBytes()), name, commit);
     }
 
     private void updateHash() {
@@ -1,13 +1,10 @@
 package MyGitLibrary.MyGitObjects;
 
-import MyGitLibrary.Constants;
 import MyGitLibrary.Exceptions.FileIOException;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -15,14 +12,14 @@ import java.util.List;
 /**
  * Class that represents a commit.
  */
-class Commit implements MyGitObject, Serializable, Comparable<Commit> {
+class Commit implements MyGitObject, Comparable<Commit> {
 
-    private String root;
+    private ObjectStore store;
     private String message;
     private String author;
     private Date date;
     private List<String> parents;
-    private Tree tree;
+    private String tree;
     private String hash;
 
     @Override
@@ -35,27 +32,41 @@ class Commit implements MyGitObject, Serializable, Comparable<Commit> {
         return hash;
     }
 
-    private Commit(@NotNull Path root, @NotNull String message, @NotNull String author, @NotNull Date date,
+    private Commit(@NotNull ObjectStore store, @NotNull String message, @NotNull String author, @NotNull Date date,
                   @NotNull List<String> parents, @NotNull Tree tree) throws FileIOException {
-        this.root = root.toString();
+        this.store = store;
         this.message = message;
         this.author = author;
         this.date = date;
         this.parents = parents;
-        this.tree = tree;
+        this.tree = tree.getHash();
         updateHash();
-        MyGitObject.write(this, root);
+        store.write(this);
     }
 
-    Commit(@NotNull Path root, @NotNull String message, @NotNull List<String> parents,
+    Commit(@NotNull ObjectStore store, @NotNull String message, @NotNull List<String> parents,
                   @NotNull Tree tree) throws FileIOException {
-        this(root, message, System.getProperty("user.name"), new Date(), parents, tree);
+        this(store, message, System.getProperty("user.name"), new Date(), parents, tree);
     }
 
-    Commit(@NotNull Path root, @NotNull String message, @NotNull List<String> parents)
+    Commit(@NotNull ObjectStore store, @NotNull String message, @NotNull List<String> parents)
             throws FileIOException {
-        this(root, message, System.getProperty("user.name"), new Date(), parents,
-                new Tree(root, root.getName(root.getNameCount() - 1).toString(), new ArrayList<>()));
+        this(store, message, System.getProperty("user.name"), new Date(), parents,
+                new Tree(store, store.getRoot().getFileName().toString(), new ArrayList<>()));
+    }
+
+    /**
+     * Creates a commit that was read from disk. It isn't written again.
+     */
+    Commit(@NotNull ObjectStore store, @NotNull String hash, @NotNull String message, @NotNull String author,
+           @NotNull Date date, @NotNull List<String> parents, @NotNull String tree) {
+        this.store = store;
+        this.hash = hash;
+        this.message = message;
+        this.author = author;
+        this.date = date;
+        this.parents = parents;
+        this.tree = tree;
     }
 
     String getMessage() {
@@ -70,19 +81,41 @@ class Commit implements MyGitObject, Serializable, Comparable<Commit> {
         return date;
     }
 
-    Tree getTree() {
-        return tree;
+    List<String> getParents() {
+        return parents;
     }
 
-    List<Commit> getLog() throws FileIOException, ClassNotFoundException {
-        List<Commit> result = new ArrayList<>();
-        result.add(this);
-        for (String hashParent : parents) {
-            Commit parent = (Commit) MyGitObject.read(
-                    Paths.get(root).resolve(Constants.objectsDirectory).resolve(hashParent));
-            result.addAll(parent.getLog());
+    Tree getTree() throws FileIOException, ClassNotFoundException {
+        return (Tree) store.read(tree);
+    }
+
+    @Override
+    public void writePayload(@NotNull DataOutputStream out) throws IOException {
+        ObjectCodec.writeHash(out, tree);
+        out.writeInt(parents.size());
+        for (String parent : parents) {
+            ObjectCodec.writeHash(out, parent);
+        }
+        out.writeLong(date.getTime());
+        ObjectCodec.writeString(out, author);
+        ObjectCodec.writeString(out, message);
+    }
+
+    static Commit readPayload(@NotNull ObjectStore store, @NotNull String hash, @NotNull DataInputStream in)
+            throws IOException {
+        String tree = ObjectCodec.readHash(in);
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Negative number of parents");
+        }
+        List<String> parents = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            parents.add(ObjectCodec.readHash(in));
         }
-        return result;
+        Date date = new Date(in.readLong());
+        String author = ObjectCodec.readString(in);
+        String message = ObjectCodec.readString(in);
+        return new Commit(store, hash, message, author, date, parents, tree);
     }
 
     private void updateHash() {
@@ -91,7 +124,7 @@ class Commit implements MyGitObject, Serializable, Comparable<Commit> {
         content.append(author);
         content.append(date);
         content.append(parents);
-        content.append(tree.getHash());
+        content.append(tree);
         parents.forEach(content::append);
         hash = DigestUtils.sha1Hex(content.toString().getBytes());
     }
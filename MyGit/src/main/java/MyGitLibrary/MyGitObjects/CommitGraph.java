@@ -0,0 +1,261 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Constants;
+import MyGitLibrary.Exceptions.FileIOException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This class represents commit-graph file. It contains parents, generation numbers and dates of commits, so history
+ * can be walked without reading commits themselves.
+ *
+ * File starts with magic bytes, version and number of commits. It's followed by fan-out table of 256 cumulative
+ * counts of hashes by their first byte and fixed-width records sorted by hash. Every record consists of hash, date,
+ * generation number, number of parents and positions of the first two parents in the file, NO_PARENT is written
+ * instead of missing parents. Commits with more parents have to be read from the object store. The file is
+ * memory-mapped.
+ */
+class CommitGraph {
+
+    static final byte[] MAGIC = {'M', 'G', 'C', 'G'};
+    static final byte VERSION = 1;
+    static final int NO_PARENT = -1;
+    static final int MAX_PARENTS = 2;
+
+    private static final int HEADER_SIZE = MAGIC.length + 1 + Integer.BYTES;
+    private static final int FANOUT_SIZE = 256;
+    private static final int RECORDS_OFFSET = HEADER_SIZE + FANOUT_SIZE * Integer.BYTES;
+    private static final int DATE_OFFSET = ObjectCodec.HASH_SIZE;
+    private static final int GENERATION_OFFSET = DATE_OFFSET + Long.BYTES;
+    private static final int PARENTS_COUNT_OFFSET = GENERATION_OFFSET + Integer.BYTES;
+    private static final int PARENTS_OFFSET = PARENTS_COUNT_OFFSET + Integer.BYTES;
+    private static final int RECORD_SIZE = PARENTS_OFFSET + MAX_PARENTS * Integer.BYTES;
+
+    private MappedByteBuffer buffer;
+    private int count;
+
+    private CommitGraph(@NotNull MappedByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /**
+     * Maps commit-graph file of repository in given directory.
+     * @param root - root of the repository.
+     * @return - the graph or null if the repository doesn't have commit-graph file or it's malformed.
+     */
+    @Nullable static CommitGraph load(@NotNull Path root) {
+        Path file = root.resolve(Constants.commitGraph);
+        if (Files.notExists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < RECORDS_OFFSET || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (byte magic : MAGIC) {
+                if (buffer.get() != magic) {
+                    return null;
+                }
+            }
+            if (buffer.get() != VERSION) {
+                return null;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || channel.size() != RECORDS_OFFSET + (long) count * RECORD_SIZE
+                    || buffer.getInt(HEADER_SIZE + (FANOUT_SIZE - 1) * Integer.BYTES) != count) {
+                return null;
+            }
+            return new CommitGraph(buffer, count);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes commit-graph file. Generation numbers of commits are computed if they are unknown. File is written to
+     * a temporary file first, which then replaces the old graph.
+     * @param root - root of the repository.
+     * @param nodes - all commits of the repository. Parents of every commit should be contained in the collection.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     */
+    static void write(@NotNull Path root, @NotNull Collection<CommitNode> nodes) throws FileIOException {
+        Map<String, CommitNode> commits = new TreeMap<>();
+        for (CommitNode node : nodes) {
+            commits.put(node.getHash(), node);
+        }
+        computeGenerations(commits);
+        Map<String, Integer> positions = new HashMap<>();
+        int[] fanout = new int[FANOUT_SIZE];
+        for (String hash : commits.keySet()) {
+            positions.put(hash, positions.size());
+            fanout[Integer.parseInt(hash.substring(0, 2), 16)]++;
+        }
+        for (int i = 1; i < FANOUT_SIZE; i++) {
+            fanout[i] += fanout[i - 1];
+        }
+
+        Path file = root.resolve(Constants.commitGraph);
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ObjectStore.TEMPORARY_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporaryFile)))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(commits.size());
+            for (int value : fanout) {
+                out.writeInt(value);
+            }
+            for (CommitNode node : commits.values()) {
+                ObjectCodec.writeHash(out, node.getHash());
+                out.writeLong(node.getDate());
+                out.writeInt(node.getGeneration());
+                out.writeInt(node.getParents().size());
+                for (int i = 0; i < MAX_PARENTS; i++) {
+                    Integer position = i < node.getParents().size() ? positions.get(node.getParents().get(i)) : null;
+                    out.writeInt(position == null ? NO_PARENT : position);
+                }
+            }
+        } catch (IOException e) {
+            throw new FileIOException(temporaryFile.toString());
+        }
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Metrics.increment(Metrics.METADATA_FILES_REPLACED);
+        } catch (IOException e) {
+            throw new FileIOException(file.toString());
+        }
+    }
+
+    /**
+     * @return - number of commits in the graph.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Finds a commit with binary search.
+     * @param hash - hash of the commit.
+     * @return - information about the commit or null if it isn't contained in the graph or has too many parents.
+     */
+    @Nullable CommitNode getNode(@NotNull String hash) {
+        byte[] bytes;
+        try {
+            bytes = ObjectCodec.hashToBytes(hash);
+        } catch (IOException e) {
+            return null;
+        }
+        int position = find(bytes);
+        if (position < 0) {
+            return null;
+        }
+        int offset = getOffset(position);
+        int parentsCount = buffer.getInt(offset + PARENTS_COUNT_OFFSET);
+        if (parentsCount < 0 || parentsCount > MAX_PARENTS) {
+            return null;
+        }
+        List<String> parents = new ArrayList<>(parentsCount);
+        for (int i = 0; i < parentsCount; i++) {
+            int parent = buffer.getInt(offset + PARENTS_OFFSET + i * Integer.BYTES);
+            if (parent < 0 || parent >= count) {
+                return null;
+            }
+            parents.add(getHash(parent));
+        }
+        return new CommitNode(hash, buffer.getLong(offset + DATE_OFFSET), buffer.getInt(offset + GENERATION_OFFSET),
+                parents);
+    }
+
+    /**
+     * Computes generation numbers of commits, whose generation is unknown. Commits are processed iteratively,
+     * so long histories don't overflow the stack. Parents that aren't contained in the map are ignored.
+     */
+    private static void computeGenerations(@NotNull Map<String, CommitNode> commits) {
+        Deque<CommitNode> stack = new ArrayDeque<>();
+        for (CommitNode start : commits.values()) {
+            if (start.getGeneration() > 0) {
+                continue;
+            }
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                CommitNode node = stack.peek();
+                int generation = 1;
+                boolean ready = true;
+                for (String parentHash : node.getParents()) {
+                    CommitNode parent = commits.get(parentHash);
+                    if (parent == null) {
+                        continue;
+                    }
+                    if (parent.getGeneration() == 0) {
+                        stack.push(parent);
+                        ready = false;
+                    } else {
+                        generation = Math.max(generation, parent.getGeneration() + 1);
+                    }
+                }
+                if (ready) {
+                    node.setGeneration(generation);
+                    stack.pop();
+                }
+            }
+        }
+    }
+
+    @NotNull private String getHash(int position) {
+        byte[] hash = new byte[ObjectCodec.HASH_SIZE];
+        ByteBuffer record = buffer.duplicate();
+        record.position(getOffset(position));
+        record.get(hash);
+        return ObjectCodec.bytesToHash(hash);
+    }
+
+    private int getOffset(int position) {
+        return RECORDS_OFFSET + position * RECORD_SIZE;
+    }
+
+    private int getFanout(int position) {
+        return buffer.getInt(HEADER_SIZE + position * Integer.BYTES);
+    }
+
+    private int find(@NotNull byte[] hash) {
+        int first = hash[0] & 0xFF;
+        int low = first == 0 ? 0 : getFanout(first - 1);
+        int high = getFanout(first) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, hash);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int position, @NotNull byte[] hash) {
+        int offset = getOffset(position);
+        for (int i = 0; i < ObjectCodec.HASH_SIZE; i++) {
+            int comparison = Integer.compare(buffer.get(offset + i) & 0xFF, hash[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+}
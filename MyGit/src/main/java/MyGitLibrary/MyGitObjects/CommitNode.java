@@ -0,0 +1,56 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class contains information about a commit that is needed to walk history: hash, date, generation number
+ * and hashes of parents. Generation number of a commit without parents is 1, generation of other commits is greater
+ * than generations of their parents by at least 1. Zero means that generation is unknown.
+ */
+class CommitNode {
+
+    /**
+     * Order in which commits are shown: newer commits go first, commits with equal dates are ordered by generation,
+     * so that children go before their parents. Generation is unknown for commits missing from commit-graph, so
+     * CommitWalk checks ancestry of such commits itself.
+     */
+    static final Comparator<CommitNode> NEWEST_FIRST = Comparator.comparingLong(CommitNode::getDate)
+            .thenComparingInt(CommitNode::getGeneration)
+            .reversed()
+            .thenComparing(CommitNode::getHash);
+
+    private String hash;
+    private long date;
+    private int generation;
+    private List<String> parents;
+
+    CommitNode(@NotNull String hash, long date, int generation, @NotNull List<String> parents) {
+        this.hash = hash;
+        this.date = date;
+        this.generation = generation;
+        this.parents = parents;
+    }
+
+    String getHash() {
+        return hash;
+    }
+
+    long getDate() {
+        return date;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    void setGeneration(int generation) {
+        this.generation = generation;
+    }
+
+    List<String> getParents() {
+        return parents;
+    }
+}
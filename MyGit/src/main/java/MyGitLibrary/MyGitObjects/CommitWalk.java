@@ -0,0 +1,136 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Exceptions.FileIOException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * This class walks history starting from given commits. Every reachable commit is returned exactly once, newer
+ * commits go first. Information about commits is taken from commit-graph if it's available, commits missing from
+ * the graph are read from the object store.
+ *
+ * Commits with equal dates are ordered by generation, which is unknown for commits missing from the graph. Among
+ * such commits a commit is returned only after commits with the same date that descend from it, so children always
+ * go before their parents.
+ */
+class CommitWalk {
+
+    private ObjectStore store;
+    private CommitGraph graph;
+    private PriorityQueue<CommitNode> queue = new PriorityQueue<>(CommitNode.NEWEST_FIRST);
+    private Set<String> seen = new HashSet<>();
+    private int missingCount;
+
+    /**
+     * @param store - store commits are read from.
+     * @param graph - commit-graph of the repository or null if it doesn't have one.
+     * @param heads - hashes of commits the walk starts from.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    CommitWalk(@NotNull ObjectStore store, @Nullable CommitGraph graph, @NotNull Collection<String> heads)
+            throws FileIOException, ClassNotFoundException {
+        this.store = store;
+        this.graph = graph;
+        for (String head : heads) {
+            push(head);
+        }
+    }
+
+    /**
+     * @return - the newest commit that wasn't returned yet or null if all reachable commits were returned.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    @Nullable CommitNode next() throws FileIOException, ClassNotFoundException {
+        CommitNode node = queue.poll();
+        if (node == null) {
+            return null;
+        }
+        CommitNode next = queue.peek();
+        if (next != null && next.getDate() == node.getDate()
+                && (node.getGeneration() == 0 || next.getGeneration() == 0)) {
+            node = pollDescendant(node);
+        }
+        for (String parent : node.getParents()) {
+            push(parent);
+        }
+        return node;
+    }
+
+    /**
+     * @return - number of commits that were visited by the walk, but weren't found in commit-graph.
+     */
+    int getMissingCount() {
+        return missingCount;
+    }
+
+    /**
+     * Takes all queued commits with the date of given one and returns a commit that isn't an ancestor of the
+     * others, the rest are queued again. Only ancestors with the same date are read, since a parent isn't newer
+     * than it's child.
+     */
+    @NotNull private CommitNode pollDescendant(@NotNull CommitNode first)
+            throws FileIOException, ClassNotFoundException {
+        List<CommitNode> ties = new ArrayList<>();
+        ties.add(first);
+        while (!queue.isEmpty() && queue.peek().getDate() == first.getDate()) {
+            ties.add(queue.poll());
+        }
+        Set<String> ancestors = new HashSet<>();
+        for (CommitNode tie : ties) {
+            Deque<CommitNode> stack = new ArrayDeque<>();
+            stack.push(tie);
+            while (!stack.isEmpty()) {
+                for (String parent : stack.pop().getParents()) {
+                    CommitNode parentNode = readNode(store, graph, parent);
+                    if (parentNode.getDate() == first.getDate() && ancestors.add(parent)) {
+                        stack.push(parentNode);
+                    }
+                }
+            }
+        }
+        CommitNode result = null;
+        for (CommitNode tie : ties) {
+            if (result == null && !ancestors.contains(tie.getHash())) {
+                result = tie;
+            } else {
+                queue.add(tie);
+            }
+        }
+        return result == null ? first : result;
+    }
+
+    private void push(@NotNull String hash) throws FileIOException, ClassNotFoundException {
+        if (!seen.add(hash)) {
+            return;
+        }
+        CommitNode node = readNode(store, graph, hash);
+        if (node.getGeneration() == 0) {
+            missingCount++;
+        }
+        queue.add(node);
+    }
+
+    /**
+     * Finds a commit in commit-graph or reads it from the object store if it isn't contained in the graph. Commits
+     * read from the store have unknown generation.
+     * @param store - store commits are read from.
+     * @param graph - commit-graph of the repository or null if it doesn't have one.
+     * @param hash - hash of the commit.
+     * @return - information about the commit.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    @NotNull static CommitNode readNode(@NotNull ObjectStore store, @Nullable CommitGraph graph,
+                                        @NotNull String hash) throws FileIOException, ClassNotFoundException {
+        CommitNode node = graph == null ? null : graph.getNode(hash);
+        if (node == null) {
+            Commit commit = (Commit) store.read(hash);
+            node = new CommitNode(hash, commit.getDate().getTime(), 0, commit.getParents());
+        }
+        return node;
+    }
+}
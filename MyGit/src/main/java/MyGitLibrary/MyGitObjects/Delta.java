@@ -0,0 +1,143 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class creates and applies deltas between byte arrays. Delta consists of lengths of base and target
+ * followed by instructions: either insert literal bytes or copy a range from the base.
+ * Matches are found by indexing blocks of the base and extending matched blocks in both directions.
+ */
+final class Delta {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final byte INSERT = 0;
+    private static final byte COPY = 1;
+
+    private Delta() {}
+
+    /**
+     * Creates delta that turns base into target.
+     * @param base - base array.
+     * @param target - target array.
+     * @return - delta.
+     */
+    @NotNull static byte[] create(@NotNull byte[] base, @NotNull byte[] target) {
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK_SIZE <= base.length; i += BLOCK_SIZE) {
+            blocks.putIfAbsent(hashBlock(base, i), i);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(base.length);
+            out.writeInt(target.length);
+            int literalStart = 0;
+            int position = 0;
+            while (position + BLOCK_SIZE <= target.length) {
+                Integer candidate = blocks.get(hashBlock(target, position));
+                if (candidate == null || !regionsEqual(base, candidate, target, position)) {
+                    position++;
+                    continue;
+                }
+                int baseStart = candidate;
+                int targetStart = position;
+                while (targetStart > literalStart && baseStart > 0
+                        && base[baseStart - 1] == target[targetStart - 1]) {
+                    baseStart--;
+                    targetStart--;
+                }
+                int baseEnd = candidate + BLOCK_SIZE;
+                int targetEnd = position + BLOCK_SIZE;
+                while (baseEnd < base.length && targetEnd < target.length && base[baseEnd] == target[targetEnd]) {
+                    baseEnd++;
+                    targetEnd++;
+                }
+                writeInsert(out, target, literalStart, targetStart);
+                out.writeByte(COPY);
+                out.writeInt(baseStart);
+                out.writeInt(baseEnd - baseStart);
+                position = targetEnd;
+                literalStart = targetEnd;
+            }
+            writeInsert(out, target, literalStart, target.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Applies delta to the base.
+     * @param base - base array, the same that was used to create delta.
+     * @param delta - delta.
+     * @return - target array.
+     * @throws IOException - thrown if delta is malformed or doesn't match the base.
+     */
+    @NotNull static byte[] apply(@NotNull byte[] base, @NotNull byte[] delta) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        if (in.readInt() != base.length) {
+            throw new IOException("Delta doesn't match it's base");
+        }
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative length of delta's target");
+        }
+        byte[] target = new byte[length];
+        int position = 0;
+        while (position < length) {
+            byte instruction = in.readByte();
+            if (instruction == INSERT) {
+                int count = in.readInt();
+                checkRange(position, count, length);
+                in.readFully(target, position, count);
+                position += count;
+            } else if (instruction == COPY) {
+                int offset = in.readInt();
+                int count = in.readInt();
+                checkRange(position, count, length);
+                checkRange(offset, count, base.length);
+                System.arraycopy(base, offset, target, position, count);
+                position += count;
+            } else {
+                throw new IOException("Unknown delta instruction");
+            }
+        }
+        return target;
+    }
+
+    private static void writeInsert(@NotNull DataOutputStream out, @NotNull byte[] target, int from, int to)
+            throws IOException {
+        if (from < to) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static void checkRange(int offset, int count, int length) throws IOException {
+        if (offset < 0 || count < 0 || offset + count > length) {
+            throw new IOException("Delta instruction is out of bounds");
+        }
+    }
+
+    private static boolean regionsEqual(@NotNull byte[] base, int baseOffset, @NotNull byte[] target, int offset) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if (base[baseOffset + i] != target[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hashBlock(@NotNull byte[] array, int offset) {
+        int hash = 1;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = 31 * hash + array[i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,70 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * This class represents one hunk of difference between two versions of a file. Every line starts with ' ' if it
+ * wasn't changed, with '-' if it was removed and with '+' if it was added. Lines keep their line terminators,
+ * the last line of a file may have none.
+ */
+public class DiffHunk {
+
+    static final char CONTEXT = ' ';
+    static final char REMOVED = '-';
+    static final char ADDED = '+';
+
+    private int oldStart;
+    private int oldCount;
+    private int newStart;
+    private int newCount;
+    private List<String> lines;
+
+    /**
+     * @param oldStart - index of the first line of the hunk in the old file starting from 0.
+     * @param newStart - index of the first line of the hunk in the new file starting from 0.
+     * @param lines - lines of the hunk with prefixes.
+     */
+    DiffHunk(int oldStart, int newStart, @NotNull List<String> lines) {
+        this.oldStart = oldStart;
+        this.newStart = newStart;
+        this.lines = lines;
+        for (String line : lines) {
+            if (line.charAt(0) != ADDED) {
+                oldCount++;
+            }
+            if (line.charAt(0) != REMOVED) {
+                newCount++;
+            }
+        }
+    }
+
+    /**
+     * @return - header of the hunk in unified diff format, for example "@@ -1,4 +1,5 @@".
+     */
+    @NotNull public String getHeader() {
+        return "@@ -" + (oldCount == 0 ? oldStart : oldStart + 1) + "," + oldCount
+                + " +" + (newCount == 0 ? newStart : newStart + 1) + "," + newCount + " @@";
+    }
+
+    public int getOldStart() {
+        return oldStart;
+    }
+
+    public int getOldCount() {
+        return oldCount;
+    }
+
+    public int getNewStart() {
+        return newStart;
+    }
+
+    public int getNewCount() {
+        return newCount;
+    }
+
+    public List<String> getLines() {
+        return lines;
+    }
+}
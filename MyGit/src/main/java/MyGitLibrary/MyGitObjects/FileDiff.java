@@ -0,0 +1,68 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents difference between two versions of a file. Added files don't have old version, deleted
+ * files don't have new version. Binary files are only reported as different.
+ */
+public class FileDiff {
+
+    private Path path;
+    private String oldHash;
+    private String newHash;
+    private boolean binary;
+    private List<DiffHunk> hunks = new ArrayList<>();
+
+    private FileDiff(@NotNull Path path, @Nullable String oldHash, @Nullable String newHash) {
+        this.path = path;
+        this.oldHash = oldHash;
+        this.newHash = newHash;
+    }
+
+    /**
+     * Compares versions of a file.
+     * @param path - path to the file.
+     * @param oldHash - hash of the old version or null if the file was added.
+     * @param oldContent - content of the old version, empty if the file was added.
+     * @param newHash - hash of the new version or null if the file was deleted.
+     * @param newContent - content of the new version, empty if the file was deleted.
+     * @return - difference between versions.
+     */
+    @NotNull static FileDiff compare(@NotNull Path path, @Nullable String oldHash, @NotNull byte[] oldContent,
+                                     @Nullable String newHash, @NotNull byte[] newContent) {
+        FileDiff diff = new FileDiff(path, oldHash, newHash);
+        if (LineMerge.isBinary(oldContent) || LineMerge.isBinary(newContent)) {
+            diff.binary = true;
+        } else {
+            LineDiff.forEachHunk(LineDiff.splitLines(oldContent), LineDiff.splitLines(newContent),
+                    LineDiff.DEFAULT_CONTEXT, diff.hunks::add);
+        }
+        return diff;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Nullable public String getOldHash() {
+        return oldHash;
+    }
+
+    @Nullable public String getNewHash() {
+        return newHash;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public List<DiffHunk> getHunks() {
+        return hunks;
+    }
+}
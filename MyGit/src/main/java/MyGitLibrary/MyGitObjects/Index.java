@@ -0,0 +1,370 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Constants;
+import MyGitLibrary.Exceptions.FileIOException;
+import MyGitLibrary.Exceptions.IndexFileIsBrokenException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class represents index file of a repository. For every path it stores hash of the file's content together
+ * with size, modification time and inode of the file at the moment the hash was computed. Thus, files whose stat
+ * data didn't change don't have to be read again. Entries that are staged for commit are marked.
+ *
+ * Entries are kept in memory sorted by path and can be changed any number of times before the index is written.
+ * Snapshots of an index share it's entries until one of them is changed, then the changed one copies them.
+ *
+ * Index starts with magic bytes, version and number of entries. Every entry consists of path relative to the root
+ * of repository, hash, size, modification time in nanoseconds, inode and flag whether it's staged.
+ *
+ * Files modified at the same time the index was written or later may be modified again without changing their
+ * stat data, so hashes of such files are never trusted.
+ */
+class Index {
+
+    static final byte[] MAGIC = {'M', 'G', 'I', 'N'};
+    static final byte VERSION = 1;
+
+    private Path root;
+    private Map<String, Entry> entries = new TreeMap<>();
+    private long timestamp = Long.MIN_VALUE;
+    private String fileKey = "";
+    private long fileSize = -1;
+    private boolean changed;
+    private boolean shared;
+
+    /**
+     * Creates an empty index for repository in given directory.
+     */
+    Index(@NotNull Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Reads index of repository in given directory. Index files written by older versions of MyGit contain lines
+     * with path and hash of staged files, they are read as entries without stat data.
+     * @param root - root of the repository.
+     * @return - the index.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws IndexFileIsBrokenException - thrown if the index file is malformed.
+     */
+    @NotNull static Index read(@NotNull Path root) throws FileIOException, IndexFileIsBrokenException {
+        try (Metrics.Timer ignored = Metrics.time("index.read")) {
+            return readFile(root);
+        }
+    }
+
+    @NotNull private static Index readFile(@NotNull Path root) throws FileIOException, IndexFileIsBrokenException {
+        Path file = root.resolve(Constants.index);
+        Index index = new Index(root);
+        byte[] bytes;
+        try {
+            index.setFileAttributes(Files.readAttributes(file, BasicFileAttributes.class));
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new FileIOException(file.toString());
+        }
+        if (bytes.length < MAGIC.length || !Arrays.equals(MAGIC, Arrays.copyOf(bytes, MAGIC.length))) {
+            index.readLines(new String(bytes));
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, MAGIC.length,
+                bytes.length - MAGIC.length))) {
+            if (in.readByte() != VERSION) {
+                throw new IndexFileIsBrokenException();
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                Entry entry = new Entry(ObjectCodec.readString(in), ObjectCodec.readHash(in), in.readLong(),
+                        in.readLong(), ObjectCodec.readString(in), in.readBoolean());
+                index.entries.put(entry.path, entry);
+            }
+            if (in.read() != -1) {
+                throw new IndexFileIsBrokenException();
+            }
+        } catch (IOException e) {
+            throw new IndexFileIsBrokenException();
+        }
+        return index;
+    }
+
+    /**
+     * Creates a snapshot of the index for a read-only operation. The snapshot can cache hashes of files without
+     * affecting this index and vice versa, entries are copied only when one of them is changed.
+     * @return - index with the same entries, which isn't changed.
+     */
+    @NotNull Index snapshot() {
+        Index snapshot = new Index(root);
+        snapshot.entries = entries;
+        snapshot.timestamp = timestamp;
+        snapshot.fileKey = fileKey;
+        snapshot.fileSize = fileSize;
+        snapshot.changed = changed;
+        snapshot.shared = true;
+        shared = true;
+        return snapshot;
+    }
+
+    /**
+     * Writes the index to the index file of the repository. Index is written to a temporary file first, which then
+     * replaces the index file, so the index file is never left partially written.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     */
+    void write() throws FileIOException {
+        try (Metrics.Timer ignored = Metrics.time("index.write")) {
+            writeFile();
+        }
+    }
+
+    private void writeFile() throws FileIOException {
+        Path file = root.resolve(Constants.index);
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporaryFile)))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                ObjectCodec.writeString(out, entry.path);
+                ObjectCodec.writeHash(out, entry.hash);
+                out.writeLong(entry.size);
+                out.writeLong(entry.modificationTime);
+                ObjectCodec.writeString(out, entry.inode);
+                out.writeBoolean(entry.staged);
+            }
+        } catch (IOException e) {
+            throw new FileIOException(temporaryFile.toString());
+        }
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Metrics.increment(Metrics.METADATA_FILES_REPLACED);
+            setFileAttributes(Files.readAttributes(file, BasicFileAttributes.class));
+        } catch (IOException e) {
+            throw new FileIOException(file.toString());
+        }
+        changed = false;
+    }
+
+    /**
+     * Checks whether the index file was replaced by someone else after this index was read or written. Besides
+     * modification time, inode and size are compared, since the index file may be replaced several times within
+     * the granularity of file timestamps, but every replacement is a new file.
+     * @return - true if the index file differs from the one this index was read from or written to.
+     */
+    boolean isOutdated() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(root.resolve(Constants.index),
+                    BasicFileAttributes.class);
+            Object key = attributes.fileKey();
+            return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) != timestamp
+                    || !fileKey.equals(key == null ? "" : key.toString()) || attributes.size() != fileSize;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return - true if entries were changed after the index was read or written.
+     */
+    boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Adds an entry or replaces existing entry for given path.
+     * @param path - absolute path to the file.
+     * @param hash - hash of the file's content.
+     * @param attributes - attributes of the file read before it's content was hashed.
+     * @param staged - whether the file is staged for commit.
+     */
+    void put(@NotNull Path path, @NotNull String hash, @NotNull BasicFileAttributes attributes, boolean staged) {
+        copyEntriesIfShared();
+        Object inode = attributes.fileKey();
+        Entry entry = new Entry(getKey(path), hash, attributes.size(),
+                attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), inode == null ? "" : inode.toString(), staged);
+        entries.put(entry.path, entry);
+        changed = true;
+    }
+
+    /**
+     * Removes entry for given path.
+     * @param path - absolute path to the file.
+     */
+    void remove(@NotNull Path path) {
+        if (!entries.containsKey(getKey(path))) {
+            return;
+        }
+        copyEntriesIfShared();
+        if (entries.remove(getKey(path)) != null) {
+            changed = true;
+        }
+    }
+
+    /**
+     * @return - list of paths and hashes of staged files.
+     */
+    @NotNull List<PairPathString> getStaged() {
+        List<PairPathString> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.staged) {
+                result.add(new PairPathString(root.resolve(entry.path), entry.hash));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Marks all entries as not staged. Their stat data is kept.
+     */
+    void unstageAll() {
+        if (entries.values().stream().noneMatch(entry -> entry.staged)) {
+            return;
+        }
+        copyEntriesIfShared();
+        for (Entry entry : entries.values()) {
+            if (entry.staged) {
+                entry.staged = false;
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Returns hash of the file's content. The file is hashed only if it's stat data differs from the stored one,
+     * in which case the entry is updated.
+     * @param path - absolute path to the file.
+     * @param attributes - current attributes of the file.
+     * @return - hash of the file computed the same way as hash of a Blob.
+     * @throws FileIOException - thrown if something went wrong during reading the file.
+     */
+    @NotNull String getFileHash(@NotNull Path path, @NotNull BasicFileAttributes attributes) throws FileIOException {
+        Entry entry = entries.get(getKey(path));
+        if (entry != null && entry.matches(attributes) && entry.modificationTime < timestamp) {
+            return entry.hash;
+        }
+        String hash = Blob.hashFile(path);
+        if (entry == null || !entry.staged) {
+            put(path, hash, attributes, false);
+        }
+        return hash;
+    }
+
+    /**
+     * Checks whether the file has content of given blob. If the blob is named, the file is hashed together with
+     * the name and, if it matches, hash of the blob is stored in the entry, so while the file isn't changed it's
+     * compared with the blob without being read.
+     * @param path - absolute path to the file.
+     * @param attributes - current attributes of the file.
+     * @param blobHash - hash of the blob.
+     * @param store - store containing the blob.
+     * @return - true if content of the file is equal to content of the blob.
+     * @throws FileIOException - thrown if something went wrong during reading the file or the blob.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    boolean hasContent(@NotNull Path path, @NotNull BasicFileAttributes attributes, @NotNull String blobHash,
+                       @NotNull ObjectStore store) throws FileIOException, ClassNotFoundException {
+        if (getFileHash(path, attributes).equals(blobHash)) {
+            return true;
+        }
+        Blob blob = (Blob) store.read(blobHash);
+        if (!blob.isNamed() || blob.getContentLength() != attributes.size()
+                || !Blob.hashFile(path, blob.getFileName()).equals(blobHash)) {
+            return false;
+        }
+        Entry entry = entries.get(getKey(path));
+        if (entry == null || !entry.staged) {
+            put(path, blobHash, attributes, false);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the file is known to have given content by it's stat data. The file is never read and
+     * the index isn't changed, so the method can be called from several threads at once.
+     * @param path - absolute path to the file.
+     * @param attributes - current attributes of the file.
+     * @param hash - hash of the expected content.
+     * @return - true if the stored entry matches the file and has given hash.
+     */
+    boolean isUnchanged(@NotNull Path path, @NotNull BasicFileAttributes attributes, @NotNull String hash) {
+        Entry entry = entries.get(getKey(path));
+        return entry != null && entry.hash.equals(hash) && entry.matches(attributes)
+                && entry.modificationTime < timestamp;
+    }
+
+    private void setFileAttributes(@NotNull BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        timestamp = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        fileKey = key == null ? "" : key.toString();
+        fileSize = attributes.size();
+    }
+
+    private void copyEntriesIfShared() {
+        if (!shared) {
+            return;
+        }
+        Map<String, Entry> copy = new TreeMap<>();
+        for (Entry entry : entries.values()) {
+            copy.put(entry.path, new Entry(entry.path, entry.hash, entry.size, entry.modificationTime, entry.inode,
+                    entry.staged));
+        }
+        entries = copy;
+        shared = false;
+    }
+
+    @NotNull private String getKey(@NotNull Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private void readLines(@NotNull String content) throws IndexFileIsBrokenException {
+        for (String line : content.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] strings = line.split(" ");
+            if (strings.length != 2) {
+                throw new IndexFileIsBrokenException();
+            }
+            Path path = root.resolve(strings[0]);
+            entries.put(getKey(path), new Entry(getKey(path), strings[1], -1, -1, "", true));
+        }
+    }
+
+    private static class Entry {
+
+        private String path;
+        private String hash;
+        private long size;
+        private long modificationTime;
+        private String inode;
+        private boolean staged;
+
+        Entry(@NotNull String path, @NotNull String hash, long size, long modificationTime, @NotNull String inode,
+              boolean staged) {
+            this.path = path;
+            this.hash = hash;
+            this.size = size;
+            this.modificationTime = modificationTime;
+            this.inode = inode;
+            this.staged = staged;
+        }
+
+        boolean matches(@NotNull BasicFileAttributes attributes) {
+            Object fileKey = attributes.fileKey();
+            return size == attributes.size()
+                    && modificationTime == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && inode.equals(fileKey == null ? "" : fileKey.toString());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads objects that were written by older versions of MyGit with java serialization and
+ * converts them into current representation. Nested classes mirror fields of the old classes exactly,
+ * so that serialized streams can be read without them.
+ */
+final class LegacyObjects {
+
+    private static final Map<String, Class<?>> LEGACY_CLASSES = new HashMap<>();
+
+    static {
+        LEGACY_CLASSES.put("MyGitLibrary.MyGitObjects.Blob", LegacyBlob.class);
+        LEGACY_CLASSES.put("MyGitLibrary.MyGitObjects.Tree", LegacyTree.class);
+        LEGACY_CLASSES.put("MyGitLibrary.MyGitObjects.Commit", LegacyCommit.class);
+        LEGACY_CLASSES.put("MyGitLibrary.MyGitObjects.Branch", LegacyBranch.class);
+    }
+
+    private LegacyObjects() {}
+
+    /**
+     * Checks whether the first bytes of a file belong to java serialization stream.
+     * @param prefix - first two bytes of a file.
+     * @return - true if the file was written with java serialization.
+     */
+    static boolean isLegacy(@NotNull byte[] prefix) {
+        return prefix.length >= 2 && (prefix[0] & 0xFF) == 0xAC && (prefix[1] & 0xFF) == 0xED;
+    }
+
+    /**
+     * Reads a serialized object and converts it into current representation.
+     * @param store - store the object belongs to.
+     * @param in - stream containing a serialized object.
+     * @return - converted object.
+     * @throws IOException - thrown if something went wrong during reading.
+     * @throws ClassNotFoundException - thrown if the stream contains unknown classes.
+     */
+    @NotNull static MyGitObject read(@NotNull ObjectStore store, @NotNull InputStream in)
+            throws IOException, ClassNotFoundException {
+        Object object = new LegacyObjectInputStream(in).readObject();
+        if (object instanceof LegacyBlob) {
+            LegacyBlob blob = (LegacyBlob) object;
+            return new Blob(blob.hash, blob.fileName, blob.content);
+        }
+        if (object instanceof LegacyTree) {
+            LegacyTree tree = (LegacyTree) object;
+            return Tree.fromChildren(store, tree.hash, tree.directoryName, tree.children);
+        }
+        if (object instanceof LegacyCommit) {
+            LegacyCommit commit = (LegacyCommit) object;
+            return new Commit(store, commit.hash, commit.message, commit.author, commit.date,
+                    commit.parents, commit.tree.hash);
+        }
+        if (object instanceof LegacyBranch) {
+            LegacyBranch branch = (LegacyBranch) object;
+            return new Branch(store, branch.hash, branch.name, branch.commit);
+        }
+        throw new IOException("Unknown legacy object");
+    }
+
+    private static class LegacyObjectInputStream extends ObjectInputStream {
+
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            Class<?> legacyClass = LEGACY_CLASSES.get(descriptor.getName());
+            return legacyClass == null ? descriptor : ObjectStreamClass.lookup(legacyClass);
+        }
+    }
+
+    private static class LegacyBlob implements Serializable {
+        private String fileName;
+        private String hash;
+        private byte[] content;
+    }
+
+    private static class LegacyTree implements Serializable {
+        private List<String> children;
+        private String directoryName;
+        private String hash;
+        private String root;
+    }
+
+    private static class LegacyCommit implements Serializable {
+        private String root;
+        private String message;
+        private String author;
+        private Date date;
+        private List<String> parents;
+        private LegacyTree tree;
+        private String hash;
+    }
+
+    private static class LegacyBranch implements Serializable {
+        private String root;
+        private String hash;
+        private String name;
+        private String commit;
+    }
+}
@@ -0,0 +1,262 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This class compares files line by line with Myers' algorithm. The linear space variant is used: the shortest edit
+ * script is walked from both ends until the paths meet and both halves are compared recursively, so memory used is
+ * proportional to number of lines rather than to number of edits multiplied by it. Common prefix and suffix are
+ * skipped at once.
+ *
+ * Lines are decoded as ISO-8859-1 and keep their line terminators, so files are restored byte by byte.
+ *
+ * Hunks are made directly from the matched lines one after another, so the whole edit script is never built.
+ */
+class LineDiff {
+
+    static final int DEFAULT_CONTEXT = 3;
+
+    private int[] first;
+    private int[] second;
+    private int[] matches;
+
+    private LineDiff(@NotNull List<String> first, @NotNull List<String> second) {
+        Map<String, Integer> ids = new HashMap<>();
+        this.first = toIds(first, ids);
+        this.second = toIds(second, ids);
+        matches = new int[first.size()];
+        Arrays.fill(matches, -1);
+    }
+
+    /**
+     * Splits content of a file into lines. Every line keeps it's terminator, the last line may have none.
+     */
+    @NotNull static List<String> splitLines(@NotNull byte[] content) {
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    /**
+     * Joins lines back into content of a file.
+     */
+    @NotNull static byte[] joinLines(@NotNull List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        lines.forEach(text::append);
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Finds the longest common subsequence of lines.
+     * @param first - lines of the first file.
+     * @param second - lines of the second file.
+     * @return - array that contains for every line of the first file index of the same line of the second file
+     * or -1 if the line was removed. Matched indices increase.
+     */
+    @NotNull static int[] match(@NotNull List<String> first, @NotNull List<String> second) {
+        LineDiff diff = new LineDiff(first, second);
+        diff.compare(0, first.size(), 0, second.size());
+        return diff.matches;
+    }
+
+    /**
+     * Compares files and passes hunks of the difference to the consumer in order they appear in files.
+     * @param first - lines of the old file.
+     * @param second - lines of the new file.
+     * @param context - number of unchanged lines shown around changes. Changes that are closer than two contexts
+     *                to each other are joined into one hunk.
+     * @param consumer - consumer of the hunks.
+     */
+    static void forEachHunk(@NotNull List<String> first, @NotNull List<String> second, int context,
+                            @NotNull Consumer<DiffHunk> consumer) {
+        int[] matches = match(first, second);
+        HunkBuilder builder = new HunkBuilder(first, second, context, consumer);
+        int i = 0;
+        int j = 0;
+        for (int anchor = 0; anchor <= first.size(); anchor++) {
+            if (anchor < first.size() && matches[anchor] == -1) {
+                continue;
+            }
+            int secondAnchor = anchor < first.size() ? matches[anchor] : second.size();
+            if (i < anchor || j < secondAnchor) {
+                builder.addChange(i, anchor, j, secondAnchor);
+            }
+            i = anchor + 1;
+            j = secondAnchor + 1;
+        }
+        builder.finish();
+    }
+
+    @NotNull private static int[] toIds(@NotNull List<String> lines, @NotNull Map<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            Integer id = ids.get(lines.get(i));
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines.get(i), id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    private void compare(int firstStart, int firstEnd, int secondStart, int secondEnd) {
+        while (firstStart < firstEnd && secondStart < secondEnd && first[firstStart] == second[secondStart]) {
+            matches[firstStart++] = secondStart++;
+        }
+        while (firstStart < firstEnd && secondStart < secondEnd && first[firstEnd - 1] == second[secondEnd - 1]) {
+            matches[--firstEnd] = --secondEnd;
+        }
+        if (firstStart == firstEnd || secondStart == secondEnd) {
+            return;
+        }
+        int[] split = findSplit(firstStart, firstEnd, secondStart, secondEnd);
+        if (split == null) {
+            return;
+        }
+        compare(firstStart, split[0], secondStart, split[1]);
+        compare(split[0], firstEnd, split[1], secondEnd);
+    }
+
+    /**
+     * Walks the shortest edit script from both ends at once until the paths overlap. Paths that leave the edit
+     * graph are excluded from further search.
+     * @return - point where the paths overlap or null if the ranges don't have common lines.
+     */
+    @Nullable private int[] findSplit(int firstStart, int firstEnd, int secondStart, int secondEnd) {
+        int n = firstEnd - firstStart;
+        int m = secondEnd - secondStart;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+        for (int d = 0; d < maxD; d++) {
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && first[firstStart + x] == second[secondStart + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else if (odd) {
+                    int reversed = offset + delta - k;
+                    if (reversed >= 0 && reversed < length && backward[reversed] != -1
+                            && x >= n - backward[reversed]) {
+                        return new int[] {firstStart + x, secondStart + y};
+                    }
+                }
+            }
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                int x = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1])
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && first[firstEnd - 1 - x] == second[secondEnd - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else if (!odd) {
+                    int reversed = offset + delta - k;
+                    if (reversed >= 0 && reversed < length && forward[reversed] != -1) {
+                        int forwardX = forward[reversed];
+                        int forwardY = offset + forwardX - reversed;
+                        if (forwardX >= n - x) {
+                            return new int[] {firstStart + forwardX, secondStart + forwardY};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Joins changed ranges of lines into hunks with context.
+     */
+    private static class HunkBuilder {
+
+        private List<String> first;
+        private List<String> second;
+        private int context;
+        private Consumer<DiffHunk> consumer;
+        private List<String> lines;
+        private int firstStart;
+        private int secondStart;
+        private int firstEnd;
+
+        HunkBuilder(@NotNull List<String> first, @NotNull List<String> second, int context,
+                    @NotNull Consumer<DiffHunk> consumer) {
+            this.first = first;
+            this.second = second;
+            this.context = context;
+            this.consumer = consumer;
+        }
+
+        void addChange(int removedStart, int removedEnd, int addedStart, int addedEnd) {
+            if (lines != null && removedStart - firstEnd > 2 * context) {
+                finish();
+            }
+            if (lines == null) {
+                lines = new ArrayList<>();
+                firstStart = Math.max(0, removedStart - context);
+                secondStart = addedStart - (removedStart - firstStart);
+                firstEnd = firstStart;
+            }
+            addLines(DiffHunk.CONTEXT, first, firstEnd, removedStart);
+            addLines(DiffHunk.REMOVED, first, removedStart, removedEnd);
+            addLines(DiffHunk.ADDED, second, addedStart, addedEnd);
+            firstEnd = removedEnd;
+        }
+
+        void finish() {
+            if (lines == null) {
+                return;
+            }
+            addLines(DiffHunk.CONTEXT, first, firstEnd, Math.min(first.size(), firstEnd + context));
+            consumer.accept(new DiffHunk(firstStart, secondStart, lines));
+            lines = null;
+        }
+
+        private void addLines(char prefix, @NotNull List<String> source, int start, int end) {
+            for (int i = start; i < end; i++) {
+                lines.add(prefix + source.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class merges two versions of a file that were made from the same base version. Both versions are compared
+ * with the base line by line. Lines that are equal in all three versions split files into chunks, every chunk is
+ * taken from the version in which it was changed. Chunks changed differently in both versions are conflicts, both
+ * variants are written surrounded by conflict markers.
+ */
+class LineMerge {
+
+    static final String OURS_MARKER = "<<<<<<< ";
+    static final String SEPARATOR = "=======";
+    static final String THEIRS_MARKER = ">>>>>>> ";
+
+    private List<String> base;
+    private List<String> ours;
+    private List<String> theirs;
+    private List<String> result = new ArrayList<>();
+    private String oursLabel;
+    private String theirsLabel;
+    private int conflicts;
+
+    private LineMerge(@NotNull byte[] base, @NotNull byte[] ours, @NotNull byte[] theirs, @NotNull String oursLabel,
+                      @NotNull String theirsLabel) {
+        this.base = LineDiff.splitLines(base);
+        this.ours = LineDiff.splitLines(ours);
+        this.theirs = LineDiff.splitLines(theirs);
+        this.oursLabel = oursLabel;
+        this.theirsLabel = theirsLabel;
+    }
+
+    /**
+     * Merges versions of a file.
+     * @param base - content of the base version.
+     * @param ours - content of the current version.
+     * @param theirs - content of the version that is merged into the current one.
+     * @param oursLabel - label of the current version written after conflict markers.
+     * @param theirsLabel - label of the merged version written after conflict markers.
+     * @return - result of the merge.
+     */
+    @NotNull static LineMerge merge(@NotNull byte[] base, @NotNull byte[] ours, @NotNull byte[] theirs,
+                                    @NotNull String oursLabel, @NotNull String theirsLabel) {
+        LineMerge merge = new LineMerge(base, ours, theirs, oursLabel, theirsLabel);
+        merge.merge();
+        return merge;
+    }
+
+    /**
+     * Files with zero bytes aren't text, so they can't be merged line by line.
+     */
+    static boolean isBinary(@NotNull byte[] content) {
+        for (byte value : content) {
+            if (value == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return - number of conflicting chunks.
+     */
+    int getConflictCount() {
+        return conflicts;
+    }
+
+    @NotNull byte[] getResult() {
+        return LineDiff.joinLines(result);
+    }
+
+    private void merge() {
+        int[] oursMatches = LineDiff.match(base, ours);
+        int[] theirsMatches = LineDiff.match(base, theirs);
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (true) {
+            while (i < base.size() && oursMatches[i] == j && theirsMatches[i] == k) {
+                result.add(base.get(i));
+                i++;
+                j++;
+                k++;
+            }
+            int next = i;
+            while (next < base.size() && (oursMatches[next] == -1 || theirsMatches[next] == -1)) {
+                next++;
+            }
+            int oursEnd = next < base.size() ? oursMatches[next] : ours.size();
+            int theirsEnd = next < base.size() ? theirsMatches[next] : theirs.size();
+            mergeChunk(base.subList(i, next), ours.subList(j, oursEnd), theirs.subList(k, theirsEnd));
+            i = next;
+            j = oursEnd;
+            k = theirsEnd;
+            if (i == base.size()) {
+                break;
+            }
+        }
+    }
+
+    private void mergeChunk(@NotNull List<String> baseChunk, @NotNull List<String> oursChunk,
+                            @NotNull List<String> theirsChunk) {
+        if (oursChunk.equals(theirsChunk) || theirsChunk.equals(baseChunk)) {
+            result.addAll(oursChunk);
+        } else if (oursChunk.equals(baseChunk)) {
+            result.addAll(theirsChunk);
+        } else {
+            conflicts++;
+            result.add(OURS_MARKER + oursLabel + "\n");
+            addLines(oursChunk);
+            result.add(SEPARATOR + "\n");
+            addLines(theirsChunk);
+            result.add(THEIRS_MARKER + theirsLabel + "\n");
+        }
+    }
+
+    /**
+     * Adds lines before a conflict marker, so the last of them has to end with line terminator.
+     */
+    private void addLines(@NotNull List<String> lines) {
+        result.addAll(lines);
+        if (!lines.isEmpty() && !lines.get(lines.size() - 1).endsWith("\n")) {
+            result.add("\n");
+        }
+    }
+}
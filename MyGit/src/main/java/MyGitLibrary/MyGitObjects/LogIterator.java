@@ -0,0 +1,94 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Exceptions.FileIOException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.NoSuchElementException;
+
+/**
+ * This class lazily returns commits of log, newest commits go first. History is walked only as far as it's needed
+ * to return requested commits: the walk stops after the limit is reached or when commits become older than
+ * the beginning of the range. Full commits are read only for the returned ones.
+ */
+public class LogIterator {
+
+    private ObjectStore store;
+    private CommitWalk walk;
+    private LogOptions options;
+    private CommitNode nextNode;
+    private int skipped;
+    private int returned;
+    private boolean exhausted;
+    private boolean stopped;
+
+    LogIterator(@NotNull ObjectStore store, @NotNull CommitWalk walk, @NotNull LogOptions options) {
+        this.store = store;
+        this.walk = walk;
+        this.options = options;
+    }
+
+    /**
+     * @return - true if there are more commits satisfying the options.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public boolean hasNext() throws FileIOException, ClassNotFoundException {
+        if (nextNode == null) {
+            nextNode = findNext();
+        }
+        return nextNode != null;
+    }
+
+    /**
+     * @return - the next commit of log.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     * @throws NoSuchElementException - thrown if there are no more commits.
+     */
+    @NotNull public LogCommitObject next() throws FileIOException, ClassNotFoundException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Commit commit = (Commit) store.read(nextNode.getHash());
+        nextNode = null;
+        returned++;
+        return new LogCommitObject(commit);
+    }
+
+    /**
+     * @return - true if the whole history was walked.
+     */
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * @return - the walk commits are taken from.
+     */
+    @NotNull CommitWalk getWalk() {
+        return walk;
+    }
+
+    @Nullable private CommitNode findNext() throws FileIOException, ClassNotFoundException {
+        if (returned >= options.getLimit() || exhausted || stopped) {
+            return null;
+        }
+        for (CommitNode node = walk.next(); node != null; node = walk.next()) {
+            if (options.getSince() != null && node.getDate() < options.getSince().getTime()) {
+                stopped = true;
+                return null;
+            }
+            if (options.getUntil() != null && node.getDate() > options.getUntil().getTime()) {
+                continue;
+            }
+            if (skipped < options.getSkip()) {
+                skipped++;
+                continue;
+            }
+            return node;
+        }
+        exhausted = true;
+        return null;
+    }
+}
@@ -4,7 +4,6 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * This class represents log. It contains current branch's name and list of commits in chronological order.
@@ -19,8 +18,8 @@ public class LogObject {
      * @param commits - list of commits in chronological order.
      * @param branchName - name of current branch.
      */
-    LogObject(@NotNull List<Commit> commits, @NotNull String branchName) {
-        this.commits.addAll(commits.stream().map(LogCommitObject::new).collect(Collectors.toList()));
+    LogObject(@NotNull List<LogCommitObject> commits, @NotNull String branchName) {
+        this.commits.addAll(commits);
         this.branchName = branchName;
     }
 
@@ -0,0 +1,76 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Date;
+
+/**
+ * This class contains filters applied to log: maximal number of commits, number of newest commits that should be
+ * skipped and range of dates. By default all commits are shown.
+ */
+public class LogOptions {
+
+    private int limit = Integer.MAX_VALUE;
+    private int skip;
+    private Date since;
+    private Date until;
+
+    /**
+     * @param limit - maximal number of commits in log.
+     * @return - these options.
+     */
+    @NotNull public LogOptions setLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @param skip - number of newest commits that shouldn't be shown.
+     * @return - these options.
+     */
+    @NotNull public LogOptions setSkip(int skip) {
+        if (skip < 0) {
+            throw new IllegalArgumentException("Negative skip");
+        }
+        this.skip = skip;
+        return this;
+    }
+
+    /**
+     * @param since - only commits made at this moment or later are shown, null removes the filter.
+     * @return - these options.
+     */
+    @NotNull public LogOptions setSince(@Nullable Date since) {
+        this.since = since;
+        return this;
+    }
+
+    /**
+     * @param until - only commits made at this moment or earlier are shown, null removes the filter.
+     * @return - these options.
+     */
+    @NotNull public LogOptions setUntil(@Nullable Date until) {
+        this.until = until;
+        return this;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getSkip() {
+        return skip;
+    }
+
+    @Nullable public Date getSince() {
+        return since;
+    }
+
+    @Nullable public Date getUntil() {
+        return until;
+    }
+}
@@ -10,15 +10,29 @@ import org.jetbrains.annotations.NotNull;
 import java.nio.file.Path;
 
 /**
- * This class encapsulates creating of logger for MyGit
+ * This class encapsulates creating of logger for MyGit. Messages are passed to a background thread through
+ * a lock-free ring buffer (LMAX Disruptor), which writes them to the file in batches, so logging doesn't wait for
+ * the disk. If the buffer is full, messages less important than INFO are discarded instead of blocking.
+ *
+ * Level of the logger is taken from system property "mygit.log.level" or environment variable MYGIT_LOG_LEVEL,
+ * TRACE is used by default. With level OFF messages aren't even formatted.
  */
 class LoggerBuilder {
+
+    static final String LEVEL_PROPERTY = "mygit.log.level";
+    static final String LEVEL_VARIABLE = "MYGIT_LOG_LEVEL";
+
+    private static final String RING_BUFFER_SIZE = "4096";
+
     /**
      * This method creates a logger object.
      * @param path - directory that contains logs.
      * @return - Logger object.
      */
     static Logger getLogger(@NotNull Path path) {
+        setPropertyIfAbsent("AsyncLoggerConfig.RingBufferSize", RING_BUFFER_SIZE);
+        setPropertyIfAbsent("log4j2.AsyncQueueFullPolicy", "Discard");
+        setPropertyIfAbsent("log4j2.DiscardThreshold", "INFO");
         final ConfigurationBuilder<BuiltConfiguration> builder =
                 ConfigurationBuilderFactory.newConfigurationBuilder();
         builder.setConfigurationName("MyGitLogger");
@@ -37,15 +51,33 @@ class LoggerBuilder {
                 .newAppender("file", "ROLLINGFILE")
                 .addAttribute("fileName", path.resolve("git0.log").toString())
                 .addAttribute("filePattern", path.resolve("git%i.log").toString())
+                .addAttribute("immediateFlush", false)
                 .add(layoutBuilder)
                 .addComponent(triggeringPolicy)
                 .addComponent(rolloverStrategy);
         builder.add(appenderBuilder);
         final RootLoggerComponentBuilder logger = builder
-                .newRootLogger(Level.TRACE)
+                .newAsyncRootLogger(getLevel())
                 .add(builder.newAppenderRef("file"))
                 .addAttribute("additivity", false);
         builder.add(logger);
         return Configurator.initialize(builder.build()).getRootLogger();
     }
+
+    /**
+     * @return - level set by the system property or the environment variable, TRACE if it's not set or unknown.
+     */
+    @NotNull static Level getLevel() {
+        String level = System.getProperty(LEVEL_PROPERTY);
+        if (level == null) {
+            level = System.getenv(LEVEL_VARIABLE);
+        }
+        return Level.toLevel(level, Level.TRACE);
+    }
+
+    private static void setPropertyIfAbsent(@NotNull String name, @NotNull String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Exceptions.FileIOException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * This class finds merge base of two commits, that is their newest common ancestor. History of both commits is
+ * walked at once, newer commits go first, and every commit is marked with commits it's reachable from. The walk
+ * stops at the first commit reachable from both of them, so only history newer than the merge base is visited.
+ */
+class MergeBase {
+
+    private static final int FIRST = 1;
+    private static final int SECOND = 2;
+    private static final int BOTH = FIRST | SECOND;
+
+    private MergeBase() {
+    }
+
+    /**
+     * @param store - store commits are read from.
+     * @param graph - commit-graph of the repository or null if it doesn't have one.
+     * @param first - hash of the first commit.
+     * @param second - hash of the second commit.
+     * @return - hash of the merge base or null if commits don't have common ancestors.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    @Nullable static String find(@NotNull ObjectStore store, @Nullable CommitGraph graph, @NotNull String first,
+                                 @NotNull String second) throws FileIOException, ClassNotFoundException {
+        if (first.equals(second)) {
+            return first;
+        }
+        Map<String, Integer> flags = new HashMap<>();
+        PriorityQueue<CommitNode> queue = new PriorityQueue<>(CommitNode.NEWEST_FIRST);
+        flags.put(first, FIRST);
+        flags.put(second, SECOND);
+        queue.add(CommitWalk.readNode(store, graph, first));
+        queue.add(CommitWalk.readNode(store, graph, second));
+        while (!queue.isEmpty()) {
+            CommitNode node = queue.poll();
+            int nodeFlags = flags.get(node.getHash());
+            if (nodeFlags == BOTH) {
+                return node.getHash();
+            }
+            for (String parent : node.getParents()) {
+                Integer parentFlags = flags.get(parent);
+                if (parentFlags == null) {
+                    flags.put(parent, nodeFlags);
+                    queue.add(CommitWalk.readNode(store, graph, parent));
+                } else if ((parentFlags | nodeFlags) != parentFlags) {
+                    // commits with equal dates may be visited before their children, such commits are visited again
+                    flags.put(parent, parentFlags | nodeFlags);
+                    queue.add(CommitWalk.readNode(store, graph, parent));
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,43 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * This class represents result of a merge. It contains hash of the merge commit and paths to files with conflicts.
+ * If there are conflicts, the commit isn't made: files contain conflict markers and the merge is finished with
+ * the next commit.
+ */
+public class MergeObject {
+
+    private String commitHash;
+    private List<Path> conflicts;
+    private boolean upToDate;
+
+    MergeObject(@Nullable String commitHash, @NotNull List<Path> conflicts, boolean upToDate) {
+        this.commitHash = commitHash;
+        this.conflicts = conflicts;
+        this.upToDate = upToDate;
+    }
+
+    /**
+     * @return - hash of the merge commit or null if it wasn't made.
+     */
+    @Nullable public String getCommitHash() {
+        return commitHash;
+    }
+
+    public List<Path> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return - true if the merged branch was already contained in the current one, so nothing was done.
+     */
+    public boolean isUpToDate() {
+        return upToDate;
+    }
+}
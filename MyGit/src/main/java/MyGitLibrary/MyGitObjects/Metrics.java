@@ -0,0 +1,101 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class collects counters and timers of all repositories in the process. Operations of RepositoryManager and
+ * their phases are timed, objects and files processed by them are counted.
+ *
+ * Counters and timers are created on first use and updated without locks, so they can be updated by several threads
+ * at once, for example while files are saved in parallel.
+ */
+class Metrics {
+
+    static final String OBJECTS_READ = "objects.read";
+    static final String OBJECTS_WRITTEN = "objects.written";
+    static final String OBJECTS_ALREADY_STORED = "objects.alreadyStored";
+    static final String CACHE_HITS = "cache.hits";
+    static final String CACHE_MISSES = "cache.misses";
+    static final String FILES_HASHED = "files.hashed";
+    static final String BYTES_HASHED = "bytes.hashed";
+    static final String FILES_CHECKED_OUT = "files.checkedOut";
+    static final String METADATA_FILES_REPLACED = "metadata.filesReplaced";
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, TimerStats> TIMERS = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    static void increment(@NotNull String counter) {
+        add(counter, 1);
+    }
+
+    static void add(@NotNull String counter, long value) {
+        COUNTERS.computeIfAbsent(counter, name -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Starts measuring time of an operation or a phase. Time is recorded when the returned timer is closed, so it's
+     * recorded even if the operation fails.
+     * @param timer - name of the timer.
+     * @return - running timer.
+     */
+    @NotNull static Timer time(@NotNull String timer) {
+        TimerStats stats = TIMERS.computeIfAbsent(timer, name -> new TimerStats());
+        long start = System.nanoTime();
+        return () -> stats.record(System.nanoTime() - start);
+    }
+
+    /**
+     * @return - current values of all counters and timers.
+     */
+    @NotNull static MetricsReport report() {
+        Map<String, Long> counters = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> counters.put(name, counter.sum()));
+        Map<String, MetricsReport.TimerReport> timers = new TreeMap<>();
+        TIMERS.forEach((name, timer) -> timers.put(name, new MetricsReport.TimerReport(timer.count.sum(),
+                timer.totalNanos.sum(), timer.maxNanos.get())));
+        return new MetricsReport(counters, timers);
+    }
+
+    /**
+     * Sets all counters and timers to zero.
+     */
+    static void reset() {
+        COUNTERS.values().forEach(LongAdder::reset);
+        TIMERS.values().forEach(TimerStats::reset);
+    }
+
+    /**
+     * Running timer, that records elapsed time when closed.
+     */
+    interface Timer extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static class TimerStats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class represents counters and timers collected by MyGit in the current process. Timers of operations are
+ * named after the operations, for example "operation.commit", timers of their phases are prefixed with name of
+ * the operation, for example "commit.buildTree". Names are sorted.
+ */
+public class MetricsReport {
+
+    private Map<String, Long> counters;
+    private Map<String, TimerReport> timers;
+
+    MetricsReport(@NotNull Map<String, Long> counters, @NotNull Map<String, TimerReport> timers) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.timers = Collections.unmodifiableMap(timers);
+    }
+
+    /**
+     * @return - values of counters by their names.
+     */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * @return - timers by their names.
+     */
+    public Map<String, TimerReport> getTimers() {
+        return timers;
+    }
+
+    /**
+     * @return - the report as a JSON object with fields "counters" and "timers".
+     */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder("{\"counters\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            builder.append(separator).append(quote(counter.getKey())).append(':').append(counter.getValue());
+            separator = ",";
+        }
+        builder.append("},\"timers\":{");
+        separator = "";
+        for (Map.Entry<String, TimerReport> timer : timers.entrySet()) {
+            TimerReport report = timer.getValue();
+            builder.append(separator).append(quote(timer.getKey()))
+                    .append(":{\"count\":").append(report.getCount())
+                    .append(",\"totalNanos\":").append(report.getTotalNanos())
+                    .append(",\"maxNanos\":").append(report.getMaxNanos()).append('}');
+            separator = ",";
+        }
+        return builder.append("}}").toString();
+    }
+
+    @NotNull private static String quote(@NotNull String string) {
+        return "\"" + string.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Number of measurements of a timer together with their total and maximal time.
+     */
+    public static class TimerReport {
+
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        TimerReport(long count, long totalNanos, long maxNanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @return - average time of a measurement in nanoseconds or 0 if there were no measurements.
+         */
+        public long getAverageNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+    }
+}
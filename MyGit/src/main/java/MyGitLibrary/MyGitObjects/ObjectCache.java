@@ -0,0 +1,141 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class caches objects read from the object store. Size of the cache is bounded by estimated number of bytes
+ * the objects occupy, least recently used objects are evicted first. Objects are immutable and addressed by their
+ * content, so cached objects never have to be invalidated. All methods are thread-safe.
+ */
+class ObjectCache {
+
+    static final long DEFAULT_CAPACITY = 32 * 1024 * 1024;
+
+    /**
+     * Approximate sizes of an object header and of a hash stored as a hex string.
+     */
+    private static final int OBJECT_OVERHEAD = 64;
+    private static final int HASH_OVERHEAD = 120;
+
+    private final long capacity;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity - maximal total size of cached objects in bytes.
+     */
+    ObjectCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cached object and marks it as recently used.
+     * @param hash - hash of the object.
+     * @return - the object or null if it isn't cached.
+     */
+    @Nullable synchronized MyGitObject get(@NotNull String hash) {
+        Entry entry = entries.get(hash);
+        if (entry == null) {
+            misses++;
+            Metrics.increment(Metrics.CACHE_MISSES);
+            return null;
+        }
+        hits++;
+        Metrics.increment(Metrics.CACHE_HITS);
+        return entry.object;
+    }
+
+    /**
+     * Adds an object to the cache evicting least recently used objects if needed. Objects that are larger than
+     * the whole cache aren't cached.
+     * @param object - object that should be cached.
+     */
+    synchronized void put(@NotNull MyGitObject object) {
+        long objectSize = estimateSize(object);
+        if (objectSize > capacity) {
+            return;
+        }
+        Entry previous = entries.put(object.getHash(), new Entry(object, objectSize));
+        if (previous != null) {
+            size -= previous.size;
+        }
+        size += objectSize;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > capacity) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.size;
+            evictions++;
+        }
+    }
+
+    synchronized long getCapacity() {
+        return capacity;
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    synchronized long getMissCount() {
+        return misses;
+    }
+
+    synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Estimates number of bytes occupied by the object in memory.
+     */
+    static long estimateSize(@NotNull MyGitObject object) {
+        long result = OBJECT_OVERHEAD + HASH_OVERHEAD;
+        switch (object.getType()) {
+            case MyGitObject.BLOB:
+                Blob blob = (Blob) object;
+                result += 2L * blob.getFileName().length();
+                if (blob.isContentLoaded()) {
+                    result += blob.getContentSize();
+                }
+                break;
+            case MyGitObject.TREE:
+                Tree tree = (Tree) object;
+                result += 2L * tree.getDirectoryName().length();
+                for (TreeEntry entry : tree.getEntries()) {
+                    result += OBJECT_OVERHEAD + HASH_OVERHEAD + 2L * entry.getName().length();
+                }
+                break;
+            case MyGitObject.COMMIT:
+                Commit commit = (Commit) object;
+                result += 2L * (commit.getMessage().length() + commit.getAuthor().length())
+                        + (long) HASH_OVERHEAD * (commit.getParents().size() + 1);
+                break;
+            default:
+                break;
+        }
+        return result;
+    }
+
+    private static class Entry {
+
+        private final MyGitObject object;
+        private final long size;
+
+        Entry(@NotNull MyGitObject object, long size) {
+            this.object = object;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class encodes instances of MyGitObject into compact binary format and decodes them back.
+ * Every encoded object starts with a header: magic bytes, version of the format, type tag and length
+ * of the payload. Payload consists of length-prefixed fields, hashes are stored as raw 20 bytes.
+ * Objects of older versions of the format can still be decoded, version 1 differs only in format of trees.
+ */
+final class ObjectCodec {
+
+    static final byte[] MAGIC = {'M', 'G', 'O'};
+    static final byte VERSION = 2;
+    static final int HEADER_SIZE = MAGIC.length + 2 + Long.BYTES;
+    static final int HASH_SIZE = 20;
+
+    /**
+     * Tags identifying types of objects in encoded form.
+     */
+    static final byte BLOB_TAG = 1;
+    static final byte TREE_TAG = 2;
+    static final byte COMMIT_TAG = 3;
+    static final byte BRANCH_TAG = 4;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private ObjectCodec() {}
+
+    /**
+     * Writes header and payload of the object to the stream.
+     * @param object - object that should be encoded.
+     * @param out - stream to write to.
+     * @throws IOException - thrown if something went wrong during writing.
+     */
+    static void encode(@NotNull MyGitObject object, @NotNull OutputStream out) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        object.writePayload(new DataOutputStream(payload));
+        DataOutputStream dataOut = new DataOutputStream(out);
+        writeHeader(dataOut, object.getType(), payload.size());
+        payload.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    /**
+     * Writes only the header of an object, so payload of known size can be streamed after it.
+     * @param out - stream to write to.
+     * @param type - type of the object.
+     * @param payloadSize - length of the payload in bytes.
+     * @throws IOException - thrown if something went wrong during writing.
+     */
+    static void writeHeader(@NotNull DataOutputStream out, @NotNull String type, long payloadSize)
+            throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(getTag(type));
+        out.writeLong(payloadSize);
+    }
+
+    /**
+     * Reads an object from the stream.
+     * @param store - store the object belongs to.
+     * @param hash - hash of the object, objects don't store their own hashes.
+     * @param in - stream positioned at the beginning of encoded object.
+     * @return - decoded object.
+     * @throws IOException - thrown if something went wrong during reading or the stream is malformed.
+     */
+    @NotNull static MyGitObject decode(@NotNull ObjectStore store, @NotNull String hash, @NotNull InputStream in)
+            throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        ObjectHeader header = readHeader(dataIn);
+        switch (header.getType()) {
+            case MyGitObject.BLOB:
+                return Blob.readPayload(store, hash, dataIn);
+            case MyGitObject.TREE:
+                return Tree.readPayload(store, hash, header.getVersion(), dataIn);
+            case MyGitObject.COMMIT:
+                return Commit.readPayload(store, hash, dataIn);
+            default:
+                return Branch.readPayload(store, dataIn);
+        }
+    }
+
+    /**
+     * Reads only the header of encoded object. Payload is left in the stream.
+     * @param in - stream positioned at the beginning of encoded object.
+     * @return - header of the object.
+     * @throws IOException - thrown if something went wrong during reading or the header is malformed.
+     */
+    @NotNull static ObjectHeader readHeader(@NotNull DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!isEncoded(magic)) {
+            throw new IOException("Not a MyGit object");
+        }
+        byte version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unknown version of object format: " + version);
+        }
+        String type = getType(in.readByte());
+        long size = in.readLong();
+        if (size < 0) {
+            throw new IOException("Negative size of payload");
+        }
+        return new ObjectHeader(type, version, size);
+    }
+
+    /**
+     * Checks whether the first bytes of a file are magic bytes of uncompressed encoded object.
+     * @param prefix - first bytes of a file.
+     * @return - true if the file contains uncompressed encoded object.
+     */
+    static boolean isEncoded(@NotNull byte[] prefix) {
+        if (prefix.length < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (prefix[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeString(@NotNull DataOutputStream out, @NotNull String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @NotNull static String readString(@NotNull DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Negative length of string");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeHash(@NotNull DataOutputStream out, @NotNull String hash) throws IOException {
+        out.write(hashToBytes(hash));
+    }
+
+    @NotNull static String readHash(@NotNull DataInputStream in) throws IOException {
+        byte[] bytes = new byte[HASH_SIZE];
+        in.readFully(bytes);
+        return bytesToHash(bytes);
+    }
+
+    @NotNull static byte[] hashToBytes(@NotNull String hash) throws IOException {
+        if (hash.length() != 2 * HASH_SIZE) {
+            throw new IOException("Malformed hash: " + hash);
+        }
+        byte[] bytes = new byte[HASH_SIZE];
+        for (int i = 0; i < HASH_SIZE; i++) {
+            int high = Character.digit(hash.charAt(2 * i), 16);
+            int low = Character.digit(hash.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Malformed hash: " + hash);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    @NotNull static String bytesToHash(@NotNull byte[] bytes) {
+        char[] chars = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    static byte getTag(@NotNull String type) {
+        switch (type) {
+            case MyGitObject.BLOB:
+                return BLOB_TAG;
+            case MyGitObject.TREE:
+                return TREE_TAG;
+            case MyGitObject.COMMIT:
+                return COMMIT_TAG;
+            default:
+                return BRANCH_TAG;
+        }
+    }
+
+    @NotNull static String getType(byte tag) throws IOException {
+        switch (tag) {
+            case BLOB_TAG:
+                return MyGitObject.BLOB;
+            case TREE_TAG:
+                return MyGitObject.TREE;
+            case COMMIT_TAG:
+                return MyGitObject.COMMIT;
+            case BRANCH_TAG:
+                return MyGitObject.BRANCH;
+            default:
+                throw new IOException("Unknown type tag: " + tag);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * This class represents header of encoded MyGitObject. It allows finding out type and size of an object
+ * without loading it's payload.
+ */
+class ObjectHeader {
+
+    private String type;
+    private byte version;
+    private long size;
+
+    ObjectHeader(@NotNull String type, byte version, long size) {
+        this.type = type;
+        this.version = version;
+        this.size = size;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    byte getVersion() {
+        return version;
+    }
+
+    long getSize() {
+        return size;
+    }
+}
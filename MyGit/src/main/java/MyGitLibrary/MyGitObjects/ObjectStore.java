@@ -0,0 +1,511 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Constants;
+import MyGitLibrary.Exceptions.FileIOException;
+import MyGitLibrary.Exceptions.WalkIOException;
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class provides access to objects of a repository. Objects are written as separate compressed files
+ * (loose objects) and may be packed into packfiles later. Reading looks for a loose object first and falls
+ * back to packfiles transparently. Objects other than branches are kept in ObjectCache once read or written.
+ * Objects can be read and written from several threads at once.
+ */
+class ObjectStore {
+
+    /**
+     * Suffix of files that are being written. Such files are never read as objects.
+     */
+    static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private Path root;
+    private ObjectCache cache;
+    /**
+     * Packfiles are listed once and searched without locking. The list is replaced only when an object isn't found
+     * and the set of packfiles on disk has changed, packfiles that are still there are reused.
+     */
+    private volatile List<PackFile> packs;
+
+    ObjectStore(@NotNull Path root) {
+        this(root, new ObjectCache(ObjectCache.DEFAULT_CAPACITY));
+    }
+
+    ObjectStore(@NotNull Path root, @NotNull ObjectCache cache) {
+        this.root = root;
+        this.cache = cache;
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Writes an object to the store in binary format described in ObjectCodec. Branches are written to branches
+     * directory by name, other objects to objects directory by hash. Objects that are already contained in the
+     * store aren't written again.
+     * @param object - object that should be written.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     */
+    void write(@NotNull MyGitObject object) throws FileIOException {
+        if (object.getType().equals(MyGitObject.BRANCH)) {
+            writeToFile(object, getBranchesDir().resolve(((Branch) object).getName()));
+            Metrics.increment(Metrics.METADATA_FILES_REPLACED);
+        } else {
+            if (!isStored(object.getHash())) {
+                writeToFile(object, getObjectsDir().resolve(object.getHash()));
+                Metrics.increment(Metrics.OBJECTS_WRITTEN);
+            } else {
+                Metrics.increment(Metrics.OBJECTS_ALREADY_STORED);
+            }
+            cache.put(object);
+        }
+    }
+
+    /**
+     * Writes an object whose hash is known only after it's encoded, for example a blob that is hashed while
+     * it's read from a file. The object is written to a temporary file, which is moved to it's place once the hash
+     * is known or deleted if the store already contains such object.
+     * @param object - object that should be written.
+     * @return - hash of the object.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     */
+    @NotNull String writeStreamed(@NotNull StreamedObject object) throws FileIOException {
+        Path temporaryFile = createTemporaryFile(getObjectsDir().resolve(MyGitObject.BLOB));
+        try {
+            String hash;
+            try (OutputStream outputStream = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                hash = object.writeTo(outputStream);
+            }
+            if (isStored(hash)) {
+                deleteTemporaryFile(temporaryFile);
+                Metrics.increment(Metrics.OBJECTS_ALREADY_STORED);
+            } else {
+                Files.move(temporaryFile, getObjectsDir().resolve(hash), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                Metrics.increment(Metrics.OBJECTS_WRITTEN);
+            }
+            return hash;
+        } catch (IOException e) {
+            deleteTemporaryFile(temporaryFile);
+            throw new FileIOException(temporaryFile.toString());
+        }
+    }
+
+    /**
+     * Reads an object by it's hash.
+     * @param hash - hash of the object.
+     * @return - an instance of MyGitObject.
+     * @throws FileIOException - thrown if there is no such object or something went wrong during input/output.
+     * @throws ClassNotFoundException - normally shouldn't be thrown.
+     */
+    @NotNull MyGitObject read(@NotNull String hash) throws FileIOException, ClassNotFoundException {
+        MyGitObject object = cache.get(hash);
+        if (object == null) {
+            object = readUncached(hash);
+            cache.put(object);
+        }
+        return object;
+    }
+
+    /**
+     * Reads a branch by it's name.
+     * @param name - name of the branch.
+     * @return - the branch.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally shouldn't be thrown.
+     */
+    @NotNull Branch readBranch(@NotNull String name) throws FileIOException, ClassNotFoundException {
+        return (Branch) readLoose(getBranchesDir().resolve(name));
+    }
+
+    /**
+     * Reads only the header of an object. Only the beginning of the object is inflated.
+     * @param hash - hash of the object.
+     * @return - header of the object.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     */
+    @NotNull ObjectHeader readHeader(@NotNull String hash) throws FileIOException {
+        try (DataInputStream inputStream = new DataInputStream(open(hash))) {
+            return ObjectCodec.readHeader(inputStream);
+        } catch (IOException e) {
+            throw new FileIOException(getObjectsDir().resolve(hash).toString());
+        }
+    }
+
+    /**
+     * Opens a stream over encoded object. Compressed objects are inflated while the stream is read, so objects
+     * never have to be decompressed into memory as a whole.
+     * @param hash - hash of the object.
+     * @return - stream positioned at the header of the object.
+     * @throws IOException - thrown if there is no such object or something went wrong during opening it.
+     */
+    @NotNull InputStream open(@NotNull String hash) throws IOException {
+        Path file = getObjectsDir().resolve(hash);
+        if (Files.exists(file)) {
+            return openLoose(file);
+        }
+        PackFile pack = findPack(hash);
+        if (pack == null) {
+            throw new FileNotFoundException(file.toString());
+        }
+        return pack.open(hash);
+    }
+
+    /**
+     * Reads the whole encoded object into memory.
+     * @param hash - hash of the object.
+     * @return - encoded object.
+     * @throws IOException - thrown if there is no such object or something went wrong during reading it.
+     */
+    @NotNull byte[] readEncoded(@NotNull String hash) throws IOException {
+        try (InputStream inputStream = open(hash)) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+    /**
+     * Checks whether the store contains an object either as loose object or in packfile.
+     * @param hash - hash of the object.
+     * @return - true if the object is contained in the store.
+     */
+    boolean contains(@NotNull String hash) {
+        return Files.exists(getObjectsDir().resolve(hash)) || findPack(hash) != null;
+    }
+
+    /**
+     * Checks whether an object is already stored before it's written. Packfiles aren't listed again, since
+     * an object missing from known packfiles is almost always new and writing it twice is harmless.
+     */
+    private boolean isStored(@NotNull String hash) {
+        return Files.exists(getObjectsDir().resolve(hash)) || findPack(hash, false) != null;
+    }
+
+    /**
+     * Packs all objects of the store into a single packfile. Loose objects and old packfiles are deleted
+     * afterwards.
+     * @param deltaChains - lists of hashes of objects that are likely to be similar, for example versions of
+     *                    the same file from the newest to the oldest. Objects in chain are delta-encoded against
+     *                    previous ones.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     */
+    synchronized void pack(@NotNull List<List<String>> deltaChains) throws FileIOException, WalkIOException {
+        List<String> looseObjects = listDirectory(getObjectsDir());
+        List<PackFile> oldPacks = getPacks();
+        Set<String> hashes = new TreeSet<>(looseObjects);
+        for (PackFile pack : oldPacks) {
+            hashes.addAll(pack.getHashes());
+        }
+        if (hashes.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(getPacksDir());
+        } catch (IOException e) {
+            throw new FileIOException(getPacksDir().toString());
+        }
+        Path newPack = PackWriter.write(this, getPacksDir(), hashes, deltaChains);
+        for (PackFile pack : oldPacks) {
+            if (!pack.getPath().equals(newPack)) {
+                deleteFile(pack.getPath());
+                deleteFile(PackFile.getIndexPath(pack.getPath()));
+            }
+        }
+        for (String hash : looseObjects) {
+            deleteFile(getObjectsDir().resolve(hash));
+        }
+        reloadPacks();
+    }
+
+    /**
+     * Returns hashes of all objects contained in the store.
+     * @return - list of hashes.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     */
+    @NotNull List<String> listObjects() throws WalkIOException {
+        Set<String> hashes = new TreeSet<>(listDirectory(getObjectsDir()));
+        for (PackFile pack : getPacks()) {
+            hashes.addAll(pack.getHashes());
+        }
+        return new ArrayList<>(hashes);
+    }
+
+    /**
+     * Rewrites all loose objects and branches that were saved by older versions of MyGit.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     * @throws ClassNotFoundException - normally shouldn't be thrown.
+     */
+    void migrate() throws FileIOException, WalkIOException, ClassNotFoundException {
+        for (Path directory : Arrays.asList(getObjectsDir(), getBranchesDir())) {
+            for (String name : listDirectory(directory)) {
+                readLoose(directory.resolve(name));
+            }
+        }
+    }
+
+    @NotNull private MyGitObject readUncached(@NotNull String hash) throws FileIOException, ClassNotFoundException {
+        Metrics.increment(Metrics.OBJECTS_READ);
+        Path file = getObjectsDir().resolve(hash);
+        if (Files.exists(file)) {
+            return readLoose(file);
+        }
+        PackFile pack = findPack(hash);
+        if (pack == null) {
+            throw new FileIOException(file.toString());
+        }
+        try (InputStream inputStream = pack.open(hash)) {
+            return ObjectCodec.decode(this, hash, inputStream);
+        } catch (IOException e) {
+            throw new FileIOException(pack.getPath().toString());
+        }
+    }
+
+    /**
+     * Reads an object from separate file. Objects written by older versions of MyGit either with java
+     * serialization or without compression are converted and rewritten in current format.
+     */
+    @NotNull private MyGitObject readLoose(@NotNull Path path) throws FileIOException, ClassNotFoundException {
+        MyGitObject object;
+        boolean outdated;
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(path))) {
+            byte[] prefix = peek(inputStream);
+            if (LegacyObjects.isLegacy(prefix)) {
+                outdated = true;
+                object = LegacyObjects.read(this, inputStream);
+            } else {
+                outdated = ObjectCodec.isEncoded(prefix);
+                object = ObjectCodec.decode(this, path.getFileName().toString(),
+                        outdated ? inputStream : new InflaterInputStream(inputStream));
+            }
+        } catch (IOException e) {
+            throw new FileIOException(path.toString());
+        }
+        if (outdated) {
+            if (object instanceof Blob) {
+                ((Blob) object).loadContent();
+            }
+            writeToFile(object, path);
+        }
+        return object;
+    }
+
+    @NotNull private InputStream openLoose(@NotNull Path path) throws IOException {
+        InputStream inputStream = new BufferedInputStream(Files.newInputStream(path));
+        try {
+            if (ObjectCodec.isEncoded(peek(inputStream))) {
+                return inputStream;
+            }
+            return new InflaterInputStream(inputStream);
+        } catch (IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Objects are compressed with Deflater before being written. Object is written to a temporary file, which then
+     * replaces the target, so objects written concurrently by different threads are never mixed up.
+     */
+    private void writeToFile(@NotNull MyGitObject object, @NotNull Path file) throws FileIOException {
+        Path temporaryFile = createTemporaryFile(file);
+        try {
+            try (OutputStream outputStream = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                ObjectCodec.encode(object, outputStream);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteTemporaryFile(temporaryFile);
+            throw new FileIOException(file.toString());
+        }
+    }
+
+    @NotNull private static Path createTemporaryFile(@NotNull Path file) throws FileIOException {
+        try {
+            return Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMPORARY_SUFFIX);
+        } catch (IOException e) {
+            throw new FileIOException(file.toString());
+        }
+    }
+
+    private static void deleteTemporaryFile(@NotNull Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Nullable private PackFile findPack(@NotNull String hash) {
+        return findPack(hash, true);
+    }
+
+    /**
+     * Finds a packfile containing the object.
+     * @param hash - hash of the object.
+     * @param reload - whether packfiles should be listed again if the object isn't found, because another manager
+     *               or process could have packed it.
+     * @return - the packfile or null if the object isn't packed.
+     */
+    @Nullable private PackFile findPack(@NotNull String hash, boolean reload) {
+        byte[] bytes;
+        try {
+            bytes = ObjectCodec.hashToBytes(hash);
+        } catch (IOException e) {
+            return null;
+        }
+        PackFile pack = findPack(bytes, getPacksOrEmpty());
+        if (pack == null && reload) {
+            try {
+                if (reloadPacks()) {
+                    pack = findPack(bytes, getPacksOrEmpty());
+                }
+            } catch (WalkIOException ignored) {
+            }
+        }
+        return pack;
+    }
+
+    @Nullable private static PackFile findPack(@NotNull byte[] hash, @NotNull List<PackFile> packs) {
+        for (PackFile pack : packs) {
+            if (pack.contains(hash)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    @NotNull private List<PackFile> getPacksOrEmpty() {
+        try {
+            return getPacks();
+        } catch (WalkIOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    @NotNull private List<PackFile> getPacks() throws WalkIOException {
+        List<PackFile> result = packs;
+        if (result == null) {
+            synchronized (this) {
+                if (packs == null) {
+                    reloadPacks();
+                }
+                result = packs;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lists packfiles and loads the ones that weren't loaded yet.
+     * @return - true if the set of packfiles has changed.
+     * @throws WalkIOException - thrown if the packs directory can't be listed or a packfile can't be loaded.
+     */
+    private synchronized boolean reloadPacks() throws WalkIOException {
+        List<String> names = new ArrayList<>();
+        if (Files.isDirectory(getPacksDir())) {
+            for (String name : listDirectory(getPacksDir())) {
+                if (name.endsWith(PackFile.PACK_EXTENSION)) {
+                    names.add(name);
+                }
+            }
+        }
+        Collections.sort(names);
+        Map<String, PackFile> loaded = new HashMap<>();
+        if (packs != null) {
+            for (PackFile pack : packs) {
+                loaded.put(pack.getPath().getFileName().toString(), pack);
+            }
+            if (loaded.keySet().equals(new HashSet<>(names))) {
+                return false;
+            }
+        }
+        List<PackFile> result = new ArrayList<>();
+        for (String name : names) {
+            PackFile pack = loaded.get(name);
+            if (pack == null) {
+                try {
+                    pack = PackFile.load(getPacksDir().resolve(name));
+                } catch (IOException e) {
+                    throw new WalkIOException(getPacksDir().toString());
+                }
+            }
+            result.add(pack);
+        }
+        packs = result;
+        return true;
+    }
+
+    @NotNull private static List<String> listDirectory(@NotNull Path directory) throws WalkIOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString())
+                    .filter(name -> !name.endsWith(TEMPORARY_SUFFIX))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new WalkIOException(directory.toString());
+        }
+    }
+
+    private static void deleteFile(@NotNull Path path) throws FileIOException {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new FileIOException(path.toString());
+        }
+    }
+
+    @NotNull private static byte[] peek(@NotNull InputStream inputStream) throws IOException {
+        byte[] prefix = new byte[ObjectCodec.MAGIC.length];
+        inputStream.mark(prefix.length);
+        int read = 0;
+        while (read < prefix.length) {
+            int count = inputStream.read(prefix, read, prefix.length - read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        inputStream.reset();
+        return prefix;
+    }
+
+    /**
+     * Object that is encoded into a stream and hashed at the same time.
+     */
+    interface StreamedObject {
+
+        /**
+         * Writes encoded object to the stream.
+         * @param out - stream to write to.
+         * @return - hash of the object.
+         * @throws IOException - thrown if something went wrong during encoding.
+         */
+        @NotNull String writeTo(@NotNull OutputStream out) throws IOException;
+    }
+
+    private Path getObjectsDir() {
+        return root.resolve(Constants.objectsDirectory);
+    }
+
+    private Path getBranchesDir() {
+        return root.resolve(Constants.branchesDirectory);
+    }
+
+    private Path getPacksDir() {
+        return root.resolve(Constants.packsDirectory);
+    }
+}
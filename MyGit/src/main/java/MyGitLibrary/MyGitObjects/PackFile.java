@@ -0,0 +1,248 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class provides read access to a packfile and it's index.
+ *
+ * Packfile starts with magic bytes, version and number of objects. It's followed by entries, each entry
+ * consists of kind (full object or delta), hash of the base object for deltas, length of data and data
+ * itself compressed with Deflater. Full entries contain encoded objects, delta entries contain deltas
+ * against encoded base objects, which are stored in the same pack.
+ *
+ * Index starts with magic bytes, version and number of objects. It's followed by fan-out table of 256
+ * cumulative counts of hashes by their first byte, sorted hashes and offsets of corresponding entries.
+ * Thus, lookup is a binary search in a small range of hashes.
+ *
+ * Both files are memory-mapped, objects are decoded directly from mapped buffers, so reading an object
+ * takes no system calls and no intermediate copies of compressed data.
+ */
+class PackFile {
+
+    static final byte[] PACK_MAGIC = {'M', 'G', 'P', 'K'};
+    static final byte[] INDEX_MAGIC = {'M', 'G', 'I', 'X'};
+    static final byte VERSION = 1;
+    static final String PACK_EXTENSION = ".pack";
+    static final String INDEX_EXTENSION = ".idx";
+    static final int FANOUT_SIZE = 256;
+
+    /**
+     * Kinds of entries in packfile.
+     */
+    static final byte FULL = 0;
+    static final byte DELTA = 1;
+
+    private static final int INDEX_HEADER_SIZE = INDEX_MAGIC.length + 1 + Integer.BYTES;
+
+    private Path path;
+    private MappedByteBuffer pack;
+    private MappedByteBuffer index;
+    private int count;
+    private int hashesOffset;
+    private int offsetsOffset;
+
+    private PackFile(@NotNull Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Maps a packfile and it's index into memory. Packfiles larger than 2GB can't be mapped with
+     * a single buffer and aren't supported.
+     * @param path - path to the packfile.
+     * @return - opened packfile.
+     * @throws IOException - thrown if something went wrong during mapping or the index is malformed.
+     */
+    @NotNull static PackFile load(@NotNull Path path) throws IOException {
+        PackFile packFile = new PackFile(path);
+        packFile.pack = map(path);
+        packFile.index = map(getIndexPath(path));
+        readMagic(packFile.pack.duplicate(), PACK_MAGIC);
+        ByteBuffer index = packFile.index.duplicate();
+        readMagic(index, INDEX_MAGIC);
+        packFile.count = index.getInt();
+        packFile.hashesOffset = INDEX_HEADER_SIZE + FANOUT_SIZE * Integer.BYTES;
+        packFile.offsetsOffset = packFile.hashesOffset + packFile.count * ObjectCodec.HASH_SIZE;
+        if (packFile.count < 0 || packFile.getFanout(FANOUT_SIZE - 1) != packFile.count
+                || packFile.index.capacity() != packFile.offsetsOffset + (long) packFile.count * Long.BYTES) {
+            throw new IOException("Broken index of " + path);
+        }
+        return packFile;
+    }
+
+    @NotNull static Path getIndexPath(@NotNull Path packPath) {
+        String name = packPath.getFileName().toString();
+        String baseName = name.substring(0, name.length() - PACK_EXTENSION.length());
+        return packPath.resolveSibling(baseName + INDEX_EXTENSION);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean contains(@NotNull byte[] hash) {
+        return find(hash) >= 0;
+    }
+
+    /**
+     * @return - hashes of all objects in the pack in sorted order.
+     */
+    @NotNull List<String> getHashes() {
+        List<String> result = new ArrayList<>(count);
+        ByteBuffer hashes = index.duplicate();
+        hashes.position(hashesOffset);
+        byte[] hash = new byte[ObjectCodec.HASH_SIZE];
+        for (int i = 0; i < count; i++) {
+            hashes.get(hash);
+            result.add(ObjectCodec.bytesToHash(hash));
+        }
+        return result;
+    }
+
+    /**
+     * Opens a stream over encoded object. Full entries are inflated directly from the mapped packfile while
+     * the stream is read, deltas are resolved in memory.
+     * @param hash - hash of the object.
+     * @return - stream positioned at the header of the object.
+     * @throws IOException - thrown if there is no such object in the pack or something went wrong during reading.
+     */
+    @NotNull InputStream open(@NotNull String hash) throws IOException {
+        int position = find(ObjectCodec.hashToBytes(hash));
+        if (position < 0) {
+            throw new FileNotFoundException(hash);
+        }
+        long offset = index.getLong(offsetsOffset + position * Long.BYTES);
+        if (offset < 0 || offset >= pack.capacity()) {
+            throw new IOException("Broken index of " + path);
+        }
+        ByteBuffer entry = pack.duplicate();
+        entry.position((int) offset);
+        byte kind = entry.get();
+        byte[] base = null;
+        if (kind == DELTA) {
+            base = new byte[ObjectCodec.HASH_SIZE];
+            entry.get(base);
+        } else if (kind != FULL) {
+            throw new IOException("Unknown kind of pack entry");
+        }
+        long length = entry.getLong();
+        if (length < 0 || length > entry.remaining()) {
+            throw new IOException("Broken entry in " + path);
+        }
+        entry.limit(entry.position() + (int) length);
+        InputStream data = new InflaterInputStream(new ByteBufferInputStream(entry));
+        if (kind == FULL) {
+            return data;
+        }
+        byte[] delta;
+        try (InputStream inputStream = data) {
+            delta = IOUtils.toByteArray(inputStream);
+        }
+        byte[] baseObject;
+        try (InputStream inputStream = open(ObjectCodec.bytesToHash(base))) {
+            baseObject = IOUtils.toByteArray(inputStream);
+        }
+        return new ByteArrayInputStream(Delta.apply(baseObject, delta));
+    }
+
+    @NotNull private static MappedByteBuffer map(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to be mapped");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void readMagic(@NotNull ByteBuffer buffer, @NotNull byte[] magic) throws IOException {
+        if (buffer.remaining() < magic.length + 1) {
+            throw new IOException("Wrong magic bytes");
+        }
+        for (byte expected : magic) {
+            if (buffer.get() != expected) {
+                throw new IOException("Wrong magic bytes");
+            }
+        }
+        if (buffer.get() != VERSION) {
+            throw new IOException("Unknown version of pack format");
+        }
+    }
+
+    private int getFanout(int position) {
+        return index.getInt(INDEX_HEADER_SIZE + position * Integer.BYTES);
+    }
+
+    private int find(@NotNull byte[] hash) {
+        int first = hash[0] & 0xFF;
+        int low = first == 0 ? 0 : getFanout(first - 1);
+        int high = getFanout(first) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, hash);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int position, @NotNull byte[] hash) {
+        int offset = hashesOffset + position * ObjectCodec.HASH_SIZE;
+        for (int i = 0; i < ObjectCodec.HASH_SIZE; i++) {
+            int comparison = Integer.compare(index.get(offset + i) & 0xFF, hash[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stream that reads bytes directly from a buffer, which is not shared with other streams.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private ByteBuffer buffer;
+
+        ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NotNull byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Exceptions.FileIOException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * This class writes packfiles and their indices. Format of both files is described in PackFile.
+ */
+final class PackWriter {
+
+    /**
+     * Maximal length of a chain of deltas. It bounds the time needed to resolve an object.
+     */
+    static final int MAX_DELTA_DEPTH = 10;
+
+    private PackWriter() {}
+
+    /**
+     * Writes objects into a new packfile. Objects in delta chains are stored as deltas against previous objects
+     * of the chain when it's profitable, other objects are stored in full.
+     * @param store - store from which objects are read.
+     * @param directory - directory in which packfile should be created.
+     * @param hashes - hashes of all objects that should be packed.
+     * @param deltaChains - lists of hashes of similar objects.
+     * @return - path to the created packfile.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     */
+    @NotNull static Path write(@NotNull ObjectStore store, @NotNull Path directory, @NotNull Set<String> hashes,
+                               @NotNull List<List<String>> deltaChains) throws FileIOException {
+        Path temporaryPack = directory.resolve("pack.tmp");
+        Map<String, Long> offsets = new TreeMap<>();
+        try (CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporaryPack)))) {
+            DataOutputStream out = new DataOutputStream(counter);
+            out.write(PackFile.PACK_MAGIC);
+            out.writeByte(PackFile.VERSION);
+            out.writeInt(hashes.size());
+            for (List<String> chain : deltaChains) {
+                byte[] previous = null;
+                String previousHash = null;
+                int depth = 0;
+                for (String hash : chain) {
+                    if (!hashes.contains(hash) || offsets.containsKey(hash)) {
+                        continue;
+                    }
+                    byte[] object = store.readEncoded(hash);
+                    offsets.put(hash, counter.getCount());
+                    byte[] delta = previous == null || depth >= MAX_DELTA_DEPTH ? null : Delta.create(previous, object);
+                    if (delta != null && delta.length < object.length / 2) {
+                        writeEntry(out, PackFile.DELTA, previousHash, delta);
+                        depth++;
+                    } else {
+                        writeEntry(out, PackFile.FULL, null, object);
+                        depth = 0;
+                    }
+                    previous = object;
+                    previousHash = hash;
+                }
+            }
+            for (String hash : hashes) {
+                if (!offsets.containsKey(hash)) {
+                    offsets.put(hash, counter.getCount());
+                    writeEntry(out, PackFile.FULL, null, store.readEncoded(hash));
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new FileIOException(temporaryPack.toString());
+        }
+
+        Path pack = directory.resolve("pack-" + getName(offsets.keySet()) + PackFile.PACK_EXTENSION);
+        Path index = PackFile.getIndexPath(pack);
+        Path temporaryIndex = directory.resolve("index.tmp");
+        writeIndex(temporaryIndex, offsets);
+        try {
+            Files.move(temporaryPack, pack, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(temporaryIndex, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new FileIOException(pack.toString());
+        }
+        return pack;
+    }
+
+    private static void writeEntry(@NotNull DataOutputStream out, byte kind, String base, @NotNull byte[] data)
+            throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream deflater = new DeflaterOutputStream(compressed)) {
+            deflater.write(data);
+        }
+        out.writeByte(kind);
+        if (base != null) {
+            ObjectCodec.writeHash(out, base);
+        }
+        out.writeLong(compressed.size());
+        compressed.writeTo(out);
+    }
+
+    private static void writeIndex(@NotNull Path path, @NotNull Map<String, Long> offsets) throws FileIOException {
+        int[] fanout = new int[PackFile.FANOUT_SIZE];
+        List<byte[]> hashes = new ArrayList<>(offsets.size());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            for (String hash : offsets.keySet()) {
+                byte[] bytes = ObjectCodec.hashToBytes(hash);
+                hashes.add(bytes);
+                fanout[bytes[0] & 0xFF]++;
+            }
+            for (int i = 1; i < PackFile.FANOUT_SIZE; i++) {
+                fanout[i] += fanout[i - 1];
+            }
+            out.write(PackFile.INDEX_MAGIC);
+            out.writeByte(PackFile.VERSION);
+            out.writeInt(offsets.size());
+            for (int count : fanout) {
+                out.writeInt(count);
+            }
+            for (byte[] hash : hashes) {
+                out.write(hash);
+            }
+            for (long offset : offsets.values()) {
+                out.writeLong(offset);
+            }
+        } catch (IOException e) {
+            throw new FileIOException(path.toString());
+        }
+    }
+
+    @NotNull private static String getName(@NotNull Collection<String> hashes) {
+        MessageDigest digest = DigestUtils.getSha1Digest();
+        for (String hash : hashes) {
+            digest.update(hash.getBytes());
+        }
+        return ObjectCodec.bytesToHash(digest.digest());
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(@NotNull OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Constants;
+import MyGitLibrary.Exceptions.FileIOException;
+import MyGitLibrary.Exceptions.RepositoryIsLockedException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class guards metadata of a repository: index, HEAD, branches, MERGE_HEAD and commit-graph. Threads of one
+ * process are ordered by a read-write lock, processes by a lock on the lock file taken with FileChannel.tryLock.
+ *
+ * Operations that change metadata take the write lock and hold the file lock until they finish, so they are never
+ * interleaved. Read-only operations take only the read lock. Caches they update, like stat data in the index,
+ * are written only if the file lock can be taken at once, otherwise they are just not saved.
+ */
+class RepositoryLock {
+
+    /**
+     * Time during which the file lock is waited for before giving up.
+     */
+    static final long TIMEOUT_MILLIS = 10000;
+
+    private static final long RETRY_MILLIS = 10;
+
+    private static final Map<Path, RepositoryLock> LOCKS = new ConcurrentHashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final Path file;
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    private RepositoryLock(@NotNull Path root) {
+        file = root.resolve(Constants.lock);
+    }
+
+    /**
+     * Returns lock of repository in given directory. All managers of the repository in one process share the lock.
+     * @param root - root of the repository.
+     * @return - the lock.
+     */
+    @NotNull static RepositoryLock get(@NotNull Path root) {
+        return LOCKS.computeIfAbsent(root.toAbsolutePath().normalize(), RepositoryLock::new);
+    }
+
+    /**
+     * Takes the write lock and the file lock. The lock is reentrant, the file lock is taken only by the outermost
+     * call.
+     * @return - handle that releases locks when closed.
+     * @throws RepositoryIsLockedException - thrown if another process holds the file lock for too long.
+     * @throws FileIOException - thrown if something went wrong during opening the lock file.
+     */
+    @NotNull Handle lockForWriting() throws FileIOException {
+        try (Metrics.Timer ignored = Metrics.time("lock.waitForWriting")) {
+            lock.writeLock().lock();
+            if (lock.getWriteHoldCount() == 1) {
+                try {
+                    lockFile(TIMEOUT_MILLIS);
+                } catch (FileIOException e) {
+                    lock.writeLock().unlock();
+                    throw e;
+                }
+            }
+        }
+        return () -> {
+            if (lock.getWriteHoldCount() == 1) {
+                releaseFile();
+            }
+            lock.writeLock().unlock();
+        };
+    }
+
+    /**
+     * Takes the read lock. Other processes aren't stopped.
+     * @return - handle that releases the lock when closed.
+     */
+    @NotNull Handle lockForReading() {
+        lock.readLock().lock();
+        return () -> lock.readLock().unlock();
+    }
+
+    /**
+     * Tries to take the file lock without waiting, so that a reader can save caches. Should be called while
+     * the read lock is held, so writers of this process are already stopped and only other readers are excluded.
+     * If current thread holds the write lock, the file lock is held already.
+     * @return - handle that releases the file lock when closed or null if the lock is taken by someone else.
+     */
+    @Nullable Handle tryLockForCaches() {
+        if (lock.isWriteLockedByCurrentThread()) {
+            return () -> {};
+        }
+        if (!cacheLock.tryLock()) {
+            return null;
+        }
+        try {
+            lockFile(0);
+        } catch (FileIOException e) {
+            cacheLock.unlock();
+            return null;
+        }
+        return () -> {
+            releaseFile();
+            cacheLock.unlock();
+        };
+    }
+
+    private void lockFile(long timeoutMillis) throws FileIOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            while (true) {
+                try {
+                    fileLock = channel.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    fileLock = null;
+                }
+                if (fileLock != null) {
+                    return;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                Thread.sleep(RETRY_MILLIS);
+            }
+        } catch (IOException e) {
+            closeChannel();
+            throw new FileIOException(file.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeChannel();
+        throw new RepositoryIsLockedException(file.toString());
+    }
+
+    private void releaseFile() {
+        try {
+            if (fileLock != null) {
+                fileLock.release();
+            }
+        } catch (IOException ignored) {
+        }
+        fileLock = null;
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+        }
+        channel = null;
+    }
+
+    /**
+     * Held lock, that is released when closed.
+     */
+    interface Handle extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -9,12 +9,12 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.NotDirectoryException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * This class represents a repository and provides access to all functions that work with it.
@@ -25,14 +25,34 @@ public class RepositoryManager {
 
     private enum HeadType { COMMIT, BRANCH }
 
+    /**
+     * Minimal number of threads that save files during add and write them during checkout. Both are mostly bound
+     * by input/output, so it's useful even on machines with few processors.
+     */
+    private static final int IO_PARALLELISM = 8;
+
+    /**
+     * Pool shared by all managers, so threads are started once and parallel operations of several managers don't
+     * multiply the number of threads. Idle workers are stopped by the pool itself.
+     */
+    private static final ForkJoinPool IO_POOL =
+            new ForkJoinPool(Math.max(IO_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+
     private Path root;
-    private List<Branch> branches = new ArrayList<>();
+    private ObjectCache objectCache;
+    private ObjectStore store;
+    private Index index;
+    private final Object indexMonitor = new Object();
+    private RepositoryLock lock;
     private Logger logger;
 
     private RepositoryManager(@NotNull Path path) {
         root = path;
+        objectCache = new ObjectCache(ObjectCache.DEFAULT_CAPACITY);
+        store = new ObjectStore(path, objectCache);
+        lock = RepositoryLock.get(path);
         logger = LoggerBuilder.getLogger(getLogsDir());
-        logger.trace("Creating RepositoryManager for directory " + root + "...\n");
+        logger.trace("Creating RepositoryManager for directory {}...", root);
     }
 
     /**
@@ -75,7 +95,7 @@ public class RepositoryManager {
 
         RepositoryManager repositoryManager = new RepositoryManager(path);
         repositoryManager.initialCommit();
-        repositoryManager.logger.trace("RepositoryManager for directory " + path + " was created\n");
+        repositoryManager.logger.trace("RepositoryManager for directory {} was created", path);
         return repositoryManager;
     }
 
@@ -126,85 +146,110 @@ public class RepositoryManager {
         try {
             List<Path> paths = Files.walk(branchesDir).collect(Collectors.toList());
             for (Path file : paths) {
-                if (!Files.isDirectory(file)) {
-                    Branch branch = (Branch) MyGitObject.read(file);
-                    repositoryManager.addBranch(branch);
+                if (!Files.isDirectory(file) && !file.toString().endsWith(ObjectStore.TEMPORARY_SUFFIX)) {
+                    repositoryManager.store.readBranch(file.getFileName().toString());
                 }
             }
         } catch (IOException e) {
             throw new WalkIOException(branchesDir.toString());
         }
-        repositoryManager.logger.trace("RepositoryManager for directory " + path + " was created\n");
+        repositoryManager.logger.trace("RepositoryManager for directory {} was created", path);
         return repositoryManager;
     }
 
     /**
      * Adds given file to repository. Current version of the file will be saved in next commit, unless you
-     * checkout something before the commit.
-     * @param path - file that should be added.
+     * checkout something before the commit. If a directory is given, all files in it are added.
+     * @param path - file or directory that should be added.
      * @throws FileIOException - thrown if something went wrong during input/output to/from file.
      * @throws FileInAnotherDirectoryException - thrown if a file is in another directory.
      * @throws FileDoesntExistException - thrown if a file that should be added doesn't exist.
-     * @throws IsDirectoryException - thrown if a directory instead of file was provided.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
      * @throws IndexFileIsBrokenException - thrown if something happened to index file, for example
      * it was changed manually.
      */
-    public void add(@NotNull Path path) throws FileIOException,
-            FileInAnotherDirectoryException, FileDoesntExistException,
-            IsDirectoryException, IndexFileIsBrokenException {
-        logger.trace("Trying to add file " + path + "\n");
-        if (!path.startsWith(root)) {
-            logger.trace("File " + path + " wasn't added because of user's mistake\n");
-            throw new FileInAnotherDirectoryException();
-        }
-        if (!Files.exists(path)) {
-            logger.trace("File " + path + " wasn't added because of user's mistake\n");
-            throw new FileDoesntExistException();
-        }
-        if (Files.isDirectory(path)) {
-            logger.trace("File " + path + " wasn't added because of user's mistake\n");
-            throw new IsDirectoryException();
-        }
+    public void add(@NotNull Path path) throws FileIOException, FileInAnotherDirectoryException,
+            FileDoesntExistException, WalkIOException, IndexFileIsBrokenException {
+        add(Collections.singletonList(path), Collections.emptyList());
+    }
 
-        Blob blob;
-        try {
-            blob = new Blob(root, Files.readAllBytes(path), path.getFileName().toString());
-        } catch (IOException e) {
-            throw new FileIOException(path.toString());
-        }
-        List<String> lines;
-        try {
-            lines = Files.readAllLines(getIndex());
-        } catch (IOException e) {
-            throw new FileIOException(getIndex().toString());
-        }
-        String hash = blob.getHash();
-        String file = "";
-        for (String line: lines) {
-            String[] strings = line.split(" ");
-            if (strings.length != 2) {
-                logger.trace("File " + path + " wasn't added because of broken index file\n");
-                throw new IndexFileIsBrokenException();
-            }
-            if (strings[0].equals(path.toString())) {
-                continue;
-            }
-            file += line + "\n";
+    /**
+     * Adds all files matching given glob pattern to repository.
+     * @param glob - pattern in glob syntax, relative to the root of repository. For example, "src/**.java".
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws FileDoesntExistException - thrown if there are no files matching the pattern.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     * @throws IndexFileIsBrokenException - thrown if something happened to index file, for example
+     * it was changed manually.
+     */
+    public void add(@NotNull String glob) throws FileIOException, FileDoesntExistException,
+            WalkIOException, IndexFileIsBrokenException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.add");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            Map<Path, BasicFileAttributes> files = new LinkedHashMap<>();
+            collectMatchingFiles(Collections.singletonList(glob), files);
+            stageFiles(files);
         }
-        file += path + " " + hash + "\n";
+    }
 
-        try {
-            OutputStream outputStream = Files.newOutputStream(getIndex());
-            outputStream.write(file.getBytes());
-            outputStream.close();
-        } catch (IOException e) {
-            throw new FileIOException(getIndex().toString());
+    /**
+     * Adds given files and directories to repository.
+     * @param paths - files and directories that should be added.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws FileInAnotherDirectoryException - thrown if a file is in another directory.
+     * @throws FileDoesntExistException - thrown if a file that should be added doesn't exist.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     * @throws IndexFileIsBrokenException - thrown if something happened to index file, for example
+     * it was changed manually.
+     */
+    public void add(@NotNull Collection<Path> paths) throws FileIOException, FileInAnotherDirectoryException,
+            FileDoesntExistException, WalkIOException, IndexFileIsBrokenException {
+        add(paths, Collections.emptyList());
+    }
+
+    /**
+     * Adds given files, all files from given directories and all files matching given glob patterns to
+     * repository. All paths are checked before any file is added. Files are hashed and saved in parallel,
+     * index file is written once after all files were added. Files from MyGit directory are never added.
+     * @param paths - files and directories that should be added.
+     * @param globs - patterns in glob syntax, relative to the root of repository.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws FileInAnotherDirectoryException - thrown if a file is in another directory.
+     * @throws FileDoesntExistException - thrown if a file that should be added doesn't exist or there are
+     * no files matching one of patterns.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     * @throws IndexFileIsBrokenException - thrown if something happened to index file, for example
+     * it was changed manually.
+     */
+    public void add(@NotNull Collection<Path> paths, @NotNull Collection<String> globs) throws FileIOException,
+            FileInAnotherDirectoryException, FileDoesntExistException, WalkIOException,
+            IndexFileIsBrokenException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.add");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            Map<Path, BasicFileAttributes> files = new LinkedHashMap<>();
+            for (Path path : paths) {
+                logger.trace("Trying to add file {}", path);
+                if (!path.startsWith(root)) {
+                    logger.trace("File {} wasn't added because of user's mistake", path);
+                    throw new FileInAnotherDirectoryException();
+                }
+                if (!Files.exists(path)) {
+                    logger.trace("File {} wasn't added because of user's mistake", path);
+                    throw new FileDoesntExistException();
+                }
+                if (!path.startsWith(getMyGitDir())) {
+                    files.putAll(walkFiles(path, SparseCheckout.none()));
+                }
+            }
+            collectMatchingFiles(globs, files);
+            stageFiles(files);
         }
-        logger.trace("File " + path + " was added\n");
     }
 
     /**
      * Commits changes that were added after the last commit/checkout. Author and date are saved automatically.
+     * If a merge was stopped because of conflicts, the commit finishes it: the merged branch becomes the second
+     * parent and added files replace files of the merge result.
      * @param message - text that goes with the commit.
      * @throws FileIOException - thrown if something went wrong during input/output to/from file.
      * @throws IndexFileIsBrokenException - thrown if something happened to index file, for example
@@ -216,62 +261,62 @@ public class RepositoryManager {
     public void commit(@NotNull String message)
             throws FileIOException, IndexFileIsBrokenException,
             HeadFileIsBrokenException, ClassNotFoundException {
-        logger.trace("Commit with message \'" + message + "\'\n");
-        List<String> lines;
-        try {
-            lines = Files.readAllLines(getIndex());
-        } catch (IOException e) {
-            throw new FileIOException(getIndex().toString());
-        }
-        List<PairPathString> pathsAndHashes = new ArrayList<>();
-        for (String line : lines) {
-            String[] strings = line.split(" ");
-            if (strings.length != 2) {
-                logger.trace("Commit unsuccessful because of broken index file\n");
-                throw new IndexFileIsBrokenException();
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.commit");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            logger.trace("Commit with message '{}'", message);
+            Index index = getIndex();
+            List<String> mergeHead = readMergeHead();
+            Tree baseTree = mergeHead == null ? getHeadCommit().getTree() : (Tree) store.read(mergeHead.get(1));
+            Tree tree;
+            try (Metrics.Timer ignoredPhase = Metrics.time("commit.buildTree")) {
+                tree = buildCommitTree(baseTree, index.getStaged());
+            }
+            List<String> parents = new ArrayList<>();
+            parents.add(getHeadCommit().getHash());
+            if (mergeHead != null) {
+                parents.add(mergeHead.get(0));
             }
-            pathsAndHashes.add(new PairPathString(Paths.get(strings[0]), strings[1]));
+            Commit commit = new Commit(store, message, parents, tree);
+            getHeadBranch().setCommit(commit.getHash());
+            writeToHead(commit.getHash());
+            index.unstageAll();
+            flushIndex();
+            removeMergeHead();
+            logger.trace("Commit {} successful", commit.getHash());
         }
-        Tree tree = buildCommitTree(pathsAndHashes);
-        List<String> parents = new ArrayList<>();
-        parents.add(getHeadCommit().getHash());
-        Commit commit = new Commit(root, message, parents, tree);
-        getHeadBranch().setCommit(commit.getHash());
-        writeToHead(commit.getHash());
-        clearIndex();
-        logger.trace("Commit " +  commit.getHash() + " successful\n");
     }
 
     /**
      * Checkouts a commit or the last commit of a branch. It means that all the files in directory that were
      * also saved in that commit are replaced with their versions from commit. All adds that weren't commited
-     * will be erased. If you checkout commit, a new branch with commit's name will be created. It was done to
-     * simplify following work with VCS.
+     * will be erased. Modified files that aren't contained in that commit are left on disk as unversioned files,
+     * so changes made to them aren't lost. If you checkout commit, a new branch with commit's name will be
+     * created. It was done to simplify following work with VCS.
      * @param name - name of a branch or a commit that you want to checkout.
      * @throws FileIOException - thrown if something went wrong during input/output to/from file.
      * @throws DirIOException - thrown if something went wrong during creating directory.
-     * @throws FileDoesntExistException - thrown if there is no branch or commit with given name.
+     * @throws FileDoesntExistException - thrown if there is no branch or commit with given name or the object
+     * with given hash isn't a commit.
      * @throws ClassNotFoundException - normally it shouldn't be thrown.
      */
     public void checkout(@NotNull String name) throws FileIOException, FileDoesntExistException,
             ClassNotFoundException, DirIOException {
-        logger.trace("Checkout " + name + "\n");
-        Branch branch = getBranch(name);
-        if (branch == null) {
-            if (Files.notExists(getObjectsDir().resolve(name))) {
-                logger.trace("Checkout " + name + " failed because such commit or branch doesn't exist\n");
-                throw new FileDoesntExistException();
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.checkout");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            logger.trace("Checkout {}", name);
+            Commit commit = resolveCommit(name);
+            Branch branch = getBranch(name);
+            if (branch == null) {
+                branch = new Branch(store, name, name);
+                logger.trace("Checkout commit");
+            } else {
+                logger.trace("Checkout branch");
             }
-            branch = new Branch(root, name, name);
-            branches.add(branch);
-            logger.trace("Checkout commit\n");
-        } else {
-            logger.trace("Checkout branch\n");
+            removeMergeHead();
+            checkoutTree(commit.getTree());
+            writeToHead(branch);
+            logger.trace("Checkout {} successful", name);
         }
-        checkoutCommit(branch.getCommitHash());
-        writeToHead(branch);
-        clearIndex();
-        logger.trace("Checkout " + name + " successful\n");
     }
 
     /**
@@ -285,11 +330,15 @@ public class RepositoryManager {
      */
     public void createBranch(@NotNull String name) throws FileIOException, BranchAlreadyExistsException,
             HeadFileIsBrokenException, ClassNotFoundException {
-        if (getBranch(name) != null) {
-            logger.trace("Branch with name " + name + " already exists\n");
-            throw new BranchAlreadyExistsException();
-        }branches.add(new Branch(root, name, getHeadCommit().getHash()));
-        logger.trace("Created branch with name " + name + " successfully\n");
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.createBranch");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            if (getBranch(name) != null) {
+                logger.trace("Branch with name {} already exists", name);
+                throw new BranchAlreadyExistsException();
+            }
+            new Branch(store, name, getHeadCommit().getHash());
+            logger.trace("Created branch with name {} successfully", name);
+        }
     }
 
     /**
@@ -304,26 +353,31 @@ public class RepositoryManager {
      */
     public void removeBranch(@NotNull String name) throws FileIOException,
             NotAbleToDeleteCurrentBranchException, HeadFileIsBrokenException, ClassNotFoundException {
-        if (getHeadBranch().getName().equals(name)) {
-            throw new NotAbleToDeleteCurrentBranchException();
-        }
-        Branch branch = getBranch(name);
-        try {
-            Files.deleteIfExists(getBranchesDir().resolve(name));
-        } catch (IOException e) {
-            throw new FileIOException(getBranchesDir().resolve(name).toString());
-        }
-        if (branch != null) {
-            branches.remove(branch);
-            logger.trace("Removed branch with name " + name + " successfully\n");
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.removeBranch");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            if (getHeadBranch().getName().equals(name)) {
+                throw new NotAbleToDeleteCurrentBranchException();
+            }
+            Branch branch = getBranch(name);
+            try {
+                Files.deleteIfExists(getBranchesDir().resolve(name));
+            } catch (IOException e) {
+                throw new FileIOException(getBranchesDir().resolve(name).toString());
+            }
+            if (branch != null) {
+                logger.trace("Removed branch with name {} successfully", name);
+            }
         }
     }
 
     /**
-     * Merges the branch with given name into current branch and instantly checkouts result. When both branches
-     * contain the file, current branch has priority. It means that last version of the file in current branch
-     * will be saved.
+     * Merges the branch with given name into current branch. Merge base of the branches is found and both heads
+     * are compared with it: files changed only in one of the branches are taken from it, files changed in both
+     * are merged line by line. The working tree is changed only after the whole result is known. If there are no
+     * conflicts, a merge commit is made. Otherwise files contain conflict markers, no commit is made and the merge
+     * is finished by the next commit.
      * @param name - branch that should be merged into current one.
+     * @return - result of the merge.
      * @throws FileIOException - thrown if something went wrong during input/output to/from file.
      * @throws DirIOException - thrown if something went wrong during creating directory.
      * @throws BranchDoesntExistException - thrown if a branch with given name doesn't exist.
@@ -331,43 +385,54 @@ public class RepositoryManager {
      * it was changed manually.
      * @throws ClassNotFoundException - normally it shouldn't be thrown.
      */
-    public void merge(@NotNull String name) throws FileIOException, BranchDoesntExistException,
+    public MergeObject merge(@NotNull String name) throws FileIOException, BranchDoesntExistException,
             HeadFileIsBrokenException, ClassNotFoundException, DirIOException {
-        logger.trace("Merging branch with name " + name + " into current branch\n");
-        Branch currentBranch = getHeadBranch();
-        Branch secondBranch = getBranch(name);
-        if (secondBranch == null) {
-            logger.trace("Merging failed because branch doesn't exist\n");
-            throw new BranchDoesntExistException();
-        }
-        if (currentBranch.getName().equals(secondBranch.getName())) {
-            logger.trace("Merging failed because branch doesn't exist\n");
-            return;
-        }
-        Commit currentCommit = (Commit) MyGitObject.read(getObjectsDir().resolve(currentBranch.getCommitHash()));
-        Commit secondCommit = (Commit) MyGitObject.read(getObjectsDir().resolve(secondBranch.getCommitHash()));
-
-        List<String> parents = new ArrayList<>();
-        parents.add(currentCommit.getHash());
-        parents.add(secondCommit.getHash());
-
-        List<PairPathString> files2 = secondCommit.getTree().checkoutTree(root);
-        List<PairPathString> files1 = currentCommit.getTree().checkoutTree(root);
-        Set<Path> filePaths = files1.stream()
-                .map(PairPathString::getPath)
-                .collect(Collectors.toSet());
-        files1.addAll(files2.stream()
-                .filter(pair -> !filePaths.contains(pair.getPath()))
-                .collect(Collectors.toList()));
-        Tree newCommitTree = buildCommitTree(files1);
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.merge");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            logger.trace("Merging branch with name {} into current branch", name);
+            Branch currentBranch = getHeadBranch();
+            Branch secondBranch = getBranch(name);
+            if (secondBranch == null) {
+                logger.trace("Merging failed because branch doesn't exist");
+                throw new BranchDoesntExistException();
+            }
+            if (currentBranch.getName().equals(secondBranch.getName())) {
+                logger.trace("Merging failed because branch doesn't exist");
+                return new MergeObject(null, Collections.emptyList(), true);
+            }
+            Commit currentCommit = (Commit) store.read(currentBranch.getCommitHash());
+            Commit secondCommit = (Commit) store.read(secondBranch.getCommitHash());
+            String baseHash = MergeBase.find(store, CommitGraph.load(root), currentCommit.getHash(),
+                    secondCommit.getHash());
+            if (secondCommit.getHash().equals(baseHash)) {
+                logger.trace("Branch {} is already merged into current branch", name);
+                return new MergeObject(null, Collections.emptyList(), true);
+            }
+            logger.trace("Merge base is {}", baseHash);
+            Tree baseTree = baseHash == null ? null : ((Commit) store.read(baseHash)).getTree();
+            TreeMerge treeMerge = new TreeMerge(store, currentBranch.getName(), name);
+            Tree newCommitTree;
+            try (Metrics.Timer ignoredPhase = Metrics.time("merge.mergeTrees")) {
+                newCommitTree = treeMerge.merge(baseTree, currentCommit.getTree(), secondCommit.getTree(), root);
+            }
+            checkoutTree(newCommitTree);
 
-        Commit newCommit = new Commit(root,
-                "merged branch \"" + name + "\" into \"" + currentBranch.getName() + "\"",
-                parents, newCommitTree);
-        currentBranch.setCommit(newCommit.getHash());
-        writeToHead(newCommit.getHash());
-        writePairsToIndex(files1);
-        logger.trace("Merged branch with name " + name + " into current branch successfully\n");
+            if (!treeMerge.getConflicts().isEmpty()) {
+                logger.trace("Merge stopped because of conflicts in {}", treeMerge.getConflicts());
+                writeMergeHead(secondCommit.getHash(), newCommitTree.getHash());
+                return new MergeObject(null, treeMerge.getConflicts(), false);
+            }
+            List<String> parents = new ArrayList<>();
+            parents.add(currentCommit.getHash());
+            parents.add(secondCommit.getHash());
+            Commit newCommit = new Commit(store,
+                    "merged branch \"" + name + "\" into \"" + currentBranch.getName() + "\"",
+                    parents, newCommitTree);
+            currentBranch.setCommit(newCommit.getHash());
+            writeToHead(newCommit.getHash());
+            logger.trace("Merged branch with name {} into current branch successfully", name);
+            return new MergeObject(newCommit.getHash(), Collections.emptyList(), false);
+        }
     }
 
     /**
@@ -380,11 +445,11 @@ public class RepositoryManager {
      */
     public void reset(@NotNull Path path) throws FileIOException,
             IndexFileIsBrokenException, FileInAnotherDirectoryException {
-        if (!path.startsWith(root)) {
-            throw new FileInAnotherDirectoryException();
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.reset");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            logger.trace("Reset was called on file {}", path);
+            resetFile(path);
         }
-        logger.trace("Reset was called on file " + path + "\n");
-        removeFromIndex(path);
     }
 
     /**
@@ -399,19 +464,22 @@ public class RepositoryManager {
      */
     public void remove(@NotNull Path path) throws FileInAnotherDirectoryException,
             FileIOException, IndexFileIsBrokenException, IsDirectoryException {
-        logger.trace("Remove was called on file " + path + "\n");
-        reset(path);
-        if (Files.exists(path) && Files.isDirectory(path)) {
-            logger.trace("Remove of " + path + " failed because it's a directory\n");
-            throw new IsDirectoryException();
-        }
-        try {
-            Files.deleteIfExists(path);
-        } catch (IOException e) {
-            logger.trace("Remove of " + path + " failed because it's broken\n");
-            throw new FileIOException(path.toString());
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.remove");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            logger.trace("Remove was called on file {}", path);
+            resetFile(path);
+            if (Files.exists(path) && Files.isDirectory(path)) {
+                logger.trace("Remove of {} failed because it's a directory", path);
+                throw new IsDirectoryException();
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.trace("Remove of {} failed because it's broken", path);
+                throw new FileIOException(path.toString());
+            }
+            logger.trace("Removed {} successfully", path);
         }
-        logger.trace("Removed " + path + " successfully\n");
     }
 
     /**
@@ -422,20 +490,61 @@ public class RepositoryManager {
      * @throws ClassNotFoundException - normally it shouldn't be thrown.
      */
     public LogObject log() throws FileIOException, HeadFileIsBrokenException, ClassNotFoundException {
-        logger.trace("Creating log of branch \'" + getCurrentBranchesName() + "\'\n");
-        Commit lastCommit = (Commit) MyGitObject.read(getObjectsDir().resolve(getHeadBranch().getCommitHash()));
-        List<Commit> commitsInLog = lastCommit.getLog();
-        List<Commit> uniqueCommits = new ArrayList<>();
-        Set<String> hashes = new HashSet<>();
-        for (Commit commit : commitsInLog) {
-            if (!hashes.contains(commit.getHash())) {
-                uniqueCommits.add(commit);
+        return log(new LogOptions());
+    }
+
+    /**
+     * Returns a log object representing part of log of current branch that satisfies given options. Commits in
+     * the log object are in chronological order. Only the part of history that is needed is walked, so cost of
+     * the call depends on the limit rather than on length of history. If the whole history was walked and some
+     * commits weren't found in commit-graph, it's rewritten.
+     * @param options - filters applied to log.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws HeadFileIsBrokenException - thrown if something happened to HEAD file, for example
+     * it was changed manually.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public LogObject log(@NotNull LogOptions options)
+            throws FileIOException, HeadFileIsBrokenException, ClassNotFoundException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.log");
+             RepositoryLock.Handle ignored = lock.lockForReading()) {
+            String branchName = getCurrentBranchesName();
+            logger.trace("Creating log of branch '{}'", branchName);
+            LogIterator iterator = logIterator(options);
+            List<LogCommitObject> commits = new ArrayList<>();
+            while (iterator.hasNext()) {
+                commits.add(iterator.next());
             }
-            hashes.add(commit.getHash());
+            Collections.reverse(commits);
+            if (iterator.isExhausted() && iterator.getWalk().getMissingCount() > 0) {
+                RepositoryLock.Handle handle = lock.tryLockForCaches();
+                if (handle != null) {
+                    try (RepositoryLock.Handle ignoredCache = handle) {
+                        writeCommitGraph(Collections.singletonList(getHeadBranch().getCommitHash()));
+                    }
+                }
+            }
+            logger.trace("Log of branch '{}' was created successfully", branchName);
+            return new LogObject(commits, branchName);
+        }
+    }
+
+    /**
+     * Returns an iterator over log of current branch that satisfies given options. Commits are returned lazily,
+     * newest commits go first, history is walked over commit-graph as far as it's needed.
+     * @param options - filters applied to log.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws HeadFileIsBrokenException - thrown if something happened to HEAD file, for example
+     * it was changed manually.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public LogIterator logIterator(@NotNull LogOptions options)
+            throws FileIOException, HeadFileIsBrokenException, ClassNotFoundException {
+        try (RepositoryLock.Handle ignored = lock.lockForReading()) {
+            CommitWalk walk = new CommitWalk(store, CommitGraph.load(root),
+                    Collections.singletonList(getHeadBranch().getCommitHash()));
+            return new LogIterator(store, walk, options);
         }
-        uniqueCommits.sort(Commit::compareTo);
-        logger.trace("Log of branch \'" + getCurrentBranchesName() + "\' was created successfully\n");
-        return new LogObject(uniqueCommits, getCurrentBranchesName());
     }
 
     /**
@@ -457,64 +566,300 @@ public class RepositoryManager {
      */
     public StatusObject status() throws FileIOException, IndexFileIsBrokenException,
             HeadFileIsBrokenException, ClassNotFoundException, WalkIOException {
-        logger.trace("Creating status...\n");
-        StatusObject status = new StatusObject();
-        Set<Path> processed = new HashSet<>();
-        List<String> lines;
-        try {
-            lines = Files.readAllLines(getIndex());
-        } catch (IOException e) {
-            logger.trace("Creating status failed because of broken index file\n");
-            throw new FileIOException(getIndex().toString());
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.status");
+             RepositoryLock.Handle ignored = lock.lockForReading()) {
+            return collectStatus();
         }
-        for (String line: lines) {
-            String[] strings = line.split(" ");
-            if (strings.length != 2) {
-                logger.trace("Creating status failed because of broken index file\n");
-                throw new IndexFileIsBrokenException();
+    }
+
+    /**
+     * Deletes all unversioned files from disk.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     * @throws IndexFileIsBrokenException - thrown if something happened to index file, for example
+     * it was changed manually.
+     * @throws HeadFileIsBrokenException - thrown if something happened to HEAD file, for example
+     * it was changed manually.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public void clean() throws IndexFileIsBrokenException, HeadFileIsBrokenException,
+            ClassNotFoundException, FileIOException, WalkIOException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.clean");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            logger.trace("Cleaning directory {}", root);
+            StatusObject status = collectStatus();
+            for (Path path : status.getUnversioned()) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    logger.trace("Cleaning failed because {} is broken", root);
+                    throw new FileIOException(path.toString());
+                }
             }
-            status.addStaged(Paths.get(strings[0]));
-            processed.add(Paths.get(strings[0]));
+            logger.trace("Cleaned directory {} successfully", root);
         }
-        getHeadCommit().getTree().updateStatus(root, processed, status);
-        try {
-            List<Path> files = Files.walk(root)
-                    .filter(p -> !p.startsWith(getMyGitDir()))
+    }
+
+    /**
+     * Sets patterns of sparse checkout and updates the working tree. Files of current commit that match new
+     * patterns are written to disk, files that don't match them are removed from disk and from the index, unless
+     * they were modified or staged. Files outside of patterns aren't walked by status and clean.
+     * @param patterns - paths to files and directories relative to the root of repository, for example "src/app".
+     *                 If there are no patterns, sparse checkout is disabled and the whole tree is checked out.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws DirIOException - thrown if something went wrong during creating directory.
+     * @throws FileInAnotherDirectoryException - thrown if a pattern points outside of the repository.
+     * @throws HeadFileIsBrokenException - thrown if something happened to HEAD file, for example
+     * it was changed manually.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public void setSparseCheckout(@NotNull Collection<String> patterns) throws FileIOException, DirIOException,
+            FileInAnotherDirectoryException, HeadFileIsBrokenException, ClassNotFoundException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.sparseCheckout");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            List<String> trimmed = patterns.stream()
+                    .map(String::trim)
+                    .filter(pattern -> !pattern.isEmpty())
                     .collect(Collectors.toList());
-            files.stream()
-                    .filter(path -> !Files.isDirectory(path) && !processed.contains(path))
-                    .forEach(status::addUnversioned);
-        } catch (IOException e) {
-            logger.trace("Creating status failed because of broken files in " + root + "\n");
-            throw new WalkIOException(root.toString());
+            SparseCheckout.validate(root, trimmed);
+            logger.trace("Setting sparse checkout patterns {}", trimmed);
+            SparseCheckout oldSparse = SparseCheckout.read(root);
+            Path file = root.resolve(Constants.sparseCheckout);
+            if (trimmed.isEmpty()) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    throw new FileIOException(file.toString());
+                }
+            } else {
+                writeAtomically(file, trimmed.stream().collect(Collectors.joining("\n", "", "\n")));
+            }
+            applySparseCheckout(getHeadCommit().getTree(), oldSparse, SparseCheckout.read(root));
+            logger.trace("Sparse checkout was set successfully");
         }
-        logger.trace("Created status successfully\n");
-        return status;
     }
 
     /**
-     * Deletes all unversioned files from disk.
+     * Returns patterns of sparse checkout.
+     * @return - patterns in the order they were set or an empty list if the whole tree is checked out.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     */
+    public List<String> getSparseCheckout() throws FileIOException {
+        try (RepositoryLock.Handle ignored = lock.lockForReading()) {
+            return SparseCheckout.read(root).getPatterns();
+        }
+    }
+
+    /**
+     * Rewrites all objects and branches that were saved by older versions of MyGit with java serialization
+     * in current binary format. Objects are also migrated lazily when they are read, this method allows
+     * migrating the whole repository at once.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public void migrateObjects() throws FileIOException, WalkIOException, ClassNotFoundException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.migrate");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            logger.trace("Migrating objects of repository {}", root);
+            store.migrate();
+            logger.trace("Migrated objects of repository {} successfully", root);
+        }
+    }
+
+    /**
+     * Packs all objects of the repository into a single packfile and deletes loose objects. Versions of the same
+     * file found in history of all branches are delta-encoded against each other, starting from the newest one.
+     * Commit-graph is rewritten as well.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public void gc() throws FileIOException, WalkIOException, ClassNotFoundException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.gc");
+             RepositoryLock.Handle ignored = lock.lockForWriting()) {
+            logger.trace("Packing objects of repository {}", root);
+            Map<Path, List<String>> versions = new LinkedHashMap<>();
+            Set<String> visitedTrees = new HashSet<>();
+            List<CommitNode> nodes = new ArrayList<>();
+            CommitWalk walk = new CommitWalk(store, CommitGraph.load(root), getBranchHeads());
+            for (CommitNode node = walk.next(); node != null; node = walk.next()) {
+                ((Commit) store.read(node.getHash())).getTree().collectFiles(Paths.get(""), visitedTrees, versions);
+                nodes.add(node);
+            }
+            store.pack(new ArrayList<>(versions.values()));
+            CommitGraph.write(root, nodes);
+            logger.trace("Packed objects of repository {} successfully", root);
+        }
+    }
+
+    /**
+     * Counts how much space is taken by blobs with equal content. Only named blobs, that were saved by older
+     * versions of MyGit, are read, since hashes of other blobs are hashes of their content.
+     * @return - statistics of blobs in the repository.
      * @throws FileIOException - thrown if something went wrong during input/output to/from file.
      * @throws WalkIOException - thrown if something went wrong during walking from directory.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public StorageReport storageReport() throws FileIOException, WalkIOException, ClassNotFoundException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.storage");
+             RepositoryLock.Handle ignored = lock.lockForReading()) {
+            logger.trace("Counting blobs of repository {}", root);
+            long blobCount = 0;
+            long namedBlobCount = 0;
+            long totalSize = 0;
+            long uniqueSize = 0;
+            Set<String> contents = new HashSet<>();
+            for (String hash : store.listObjects()) {
+                if (!store.readHeader(hash).getType().equals(MyGitObject.BLOB)) {
+                    continue;
+                }
+                Blob blob = (Blob) store.read(hash);
+                blobCount++;
+                totalSize += blob.getContentLength();
+                if (blob.isNamed()) {
+                    namedBlobCount++;
+                }
+                if (contents.add(blob.getContentHash())) {
+                    uniqueSize += blob.getContentLength();
+                }
+            }
+            logger.trace("Found {} blobs with {} different contents", blobCount, contents.size());
+            return new StorageReport(blobCount, contents.size(), namedBlobCount, totalSize, uniqueSize);
+        }
+    }
+
+    /**
+     * Returns counters and timers collected by all managers in this process: time of every operation and of it's
+     * phases, numbers of objects read and written, bytes hashed, hits of the object cache and so on.
+     * @return - current values of the metrics.
+     */
+    public MetricsReport metrics() {
+        return Metrics.report();
+    }
+
+    /**
+     * Sets all metrics collected in this process to zero.
+     */
+    public void resetMetrics() {
+        Metrics.reset();
+    }
+
+    /**
+     * Compares files in the working tree with their versions in the index. Staged files are compared with their
+     * staged versions, other versioned files with versions from current commit. Files whose stat data didn't
+     * change since they were hashed aren't read.
+     * @return - differences of modified and deleted files, sorted by path.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
      * @throws IndexFileIsBrokenException - thrown if something happened to index file, for example
      * it was changed manually.
      * @throws HeadFileIsBrokenException - thrown if something happened to HEAD file, for example
      * it was changed manually.
      * @throws ClassNotFoundException - normally it shouldn't be thrown.
      */
-    public void clean() throws IndexFileIsBrokenException, HeadFileIsBrokenException,
-            ClassNotFoundException, FileIOException, WalkIOException {
-        logger.trace("Cleaning directory " + root + "\n");
-        StatusObject status = status();
-        for (Path path : status.getUnversioned()) {
-            try {
-                Files.deleteIfExists(path);
-            } catch (IOException e) {
-                logger.trace("Cleaning failed because " + root + " is broken\n");
-                throw new FileIOException(path.toString());
+    public List<FileDiff> diff() throws FileIOException, IndexFileIsBrokenException,
+            HeadFileIsBrokenException, ClassNotFoundException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.diff");
+             RepositoryLock.Handle ignored = lock.lockForReading()) {
+            logger.trace("Comparing working tree with index...");
+            Index index = readIndex();
+            List<Path> directories = new ArrayList<>();
+            List<PairPathString> files = new ArrayList<>();
+            getHeadCommit().getTree().collectCheckout(root, directories, files, SparseCheckout.read(root));
+            Map<Path, String> expected = new TreeMap<>();
+            files.forEach(pair -> expected.put(pair.getPath(), pair.getString()));
+            index.getStaged().forEach(pair -> expected.put(pair.getPath(), pair.getString()));
+            List<FileDiff> diffs = new ArrayList<>();
+            for (Map.Entry<Path, String> entry : expected.entrySet()) {
+                Path path = entry.getKey();
+                if (Files.notExists(path)) {
+                    diffs.add(FileDiff.compare(path, entry.getValue(), readBlob(entry.getValue()), null, new byte[0]));
+                    continue;
+                }
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (!index.hasContent(path, attributes, entry.getValue(), store)) {
+                        diffs.add(FileDiff.compare(path, entry.getValue(), readBlob(entry.getValue()),
+                                index.getFileHash(path, attributes), Files.readAllBytes(path)));
+                    }
+                } catch (IOException e) {
+                    throw new FileIOException(path.toString());
+                }
+            }
+            saveIndexCache(index);
+            logger.trace("Found {} changed files", diffs.size());
+            return diffs;
+        }
+    }
+
+    /**
+     * Compares staged files with their versions from current commit.
+     * @return - differences of staged files, sorted by path.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws IndexFileIsBrokenException - thrown if something happened to index file, for example
+     * it was changed manually.
+     * @throws HeadFileIsBrokenException - thrown if something happened to HEAD file, for example
+     * it was changed manually.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public List<FileDiff> diffStaged() throws FileIOException, IndexFileIsBrokenException,
+            HeadFileIsBrokenException, ClassNotFoundException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.diffStaged");
+             RepositoryLock.Handle ignored = lock.lockForReading()) {
+            logger.trace("Comparing index with current commit...");
+            Tree tree = getHeadCommit().getTree();
+            List<PairPathString> staged = new ArrayList<>(readIndex().getStaged());
+            staged.sort(Comparator.comparing(PairPathString::getPath));
+            List<FileDiff> diffs = new ArrayList<>();
+            for (PairPathString pair : staged) {
+                String oldHash = tree.findFileHash(root.relativize(pair.getPath()));
+                if (!pair.getString().equals(oldHash)) {
+                    diffs.add(FileDiff.compare(pair.getPath(), oldHash,
+                            oldHash == null ? new byte[0] : readBlob(oldHash), pair.getString(),
+                            readBlob(pair.getString())));
+                }
             }
+            logger.trace("Found {} staged files", diffs.size());
+            return diffs;
+        }
+    }
+
+    /**
+     * Compares two commits. Subtrees with equal hashes are skipped without being read.
+     * @param from - name of a branch or hash of the old commit.
+     * @param to - name of a branch or hash of the new commit.
+     * @return - differences of added, modified and removed files, sorted by path.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from file.
+     * @throws FileDoesntExistException - thrown if there is no branch or commit with one of given names.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    public List<FileDiff> diff(@NotNull String from, @NotNull String to) throws FileIOException,
+            FileDoesntExistException, ClassNotFoundException {
+        try (Metrics.Timer ignoredTimer = Metrics.time("operation.diffCommits");
+             RepositoryLock.Handle ignored = lock.lockForReading()) {
+            logger.trace("Comparing {} with {}", from, to);
+            Tree oldTree = resolveCommit(from).getTree();
+            Tree newTree = resolveCommit(to).getTree();
+            List<Path> directories = new ArrayList<>();
+            List<PairPathString> files = new ArrayList<>();
+            List<Path> removed = new ArrayList<>();
+            newTree.collectChanges(oldTree, root, directories, files, removed, SparseCheckout.none());
+            Map<Path, FileDiff> diffs = new TreeMap<>();
+            for (PairPathString pair : files) {
+                String oldHash = oldTree.findFileHash(root.relativize(pair.getPath()));
+                diffs.put(pair.getPath(), FileDiff.compare(pair.getPath(), oldHash,
+                        oldHash == null ? new byte[0] : readBlob(oldHash), pair.getString(),
+                        readBlob(pair.getString())));
+            }
+            for (Path path : removed) {
+                String oldHash = oldTree.findFileHash(root.relativize(path));
+                if (oldHash != null) {
+                    diffs.put(path, FileDiff.compare(path, oldHash, readBlob(oldHash), null, new byte[0]));
+                }
+            }
+            logger.trace("Found {} changed files", diffs.size());
+            return new ArrayList<>(diffs.values());
         }
-        logger.trace("Cleaned directory " + root + " successfully\n");
     }
 
     /**
@@ -527,85 +872,399 @@ public class RepositoryManager {
      */
     public String getCurrentBranchesName()
             throws FileIOException, HeadFileIsBrokenException, ClassNotFoundException {
-        return getHeadBranch().getName();
+        try (RepositoryLock.Handle ignored = lock.lockForReading()) {
+            return getHeadBranch().getName();
+        }
+    }
+
+    /**
+     * Writes commit-graph containing all commits reachable from branches and given commits. Nodes already
+     * contained in the old graph are reused.
+     */
+    private void writeCommitGraph(@NotNull Collection<String> heads) throws FileIOException, ClassNotFoundException {
+        Set<String> starts = new LinkedHashSet<>(getBranchHeads());
+        starts.addAll(heads);
+        List<CommitNode> nodes = new ArrayList<>();
+        CommitWalk walk = new CommitWalk(store, CommitGraph.load(root), starts);
+        for (CommitNode node = walk.next(); node != null; node = walk.next()) {
+            nodes.add(node);
+        }
+        CommitGraph.write(root, nodes);
+        logger.trace("Commit-graph with {} commits was written", nodes.size());
+    }
+
+    @NotNull private List<String> getBranchHeads() throws FileIOException, ClassNotFoundException {
+        List<String> heads = new ArrayList<>();
+        try (Stream<Path> files = Files.list(getBranchesDir())) {
+            for (Path file : files.collect(Collectors.toList())) {
+                if (Files.isRegularFile(file) && !file.toString().endsWith(ObjectStore.TEMPORARY_SUFFIX)) {
+                    heads.add(store.readBranch(file.getFileName().toString()).getCommitHash());
+                }
+            }
+        } catch (IOException e) {
+            throw new FileIOException(getBranchesDir().toString());
+        }
+        return heads;
     }
 
     private void initialCommit() throws FileIOException {
-        Commit commit = new Commit(root, "initial commit", new ArrayList<>());
-        Branch masterBranch = new Branch(root, "master", commit.getHash());
-        branches.add(masterBranch);
+        Commit commit = new Commit(store, "initial commit", new ArrayList<>());
+        Branch masterBranch = new Branch(store, "master", commit.getHash());
         writeToHead(masterBranch);
     }
 
-    private void checkoutCommit(@NotNull String commitHash)
-            throws FileIOException, FileDoesntExistException, ClassNotFoundException, DirIOException {
-        Commit commit = (Commit)MyGitObject.read(getObjectsDir().resolve(commitHash));
-        List<PairPathString> files = commit.getTree().checkoutTree(root);
-        writePairsToIndex(files);
+    /**
+     * Checks out given tree. The tree is compared with tree of current head commit and only added, modified and
+     * removed files are touched. If the trees are equal or head commit can't be read, the whole tree is checked
+     * out, so files deleted from disk are restored. Paths outside of sparse checkout patterns aren't touched.
+     */
+    private void checkoutTree(@NotNull Tree tree) throws FileIOException, ClassNotFoundException, DirIOException {
+        SparseCheckout sparse = SparseCheckout.read(root);
+        Tree oldTree;
+        try {
+            oldTree = getHeadCommit().getTree();
+        } catch (HeadFileIsBrokenException e) {
+            oldTree = null;
+        }
+        List<Path> directories = new ArrayList<>();
+        List<PairPathString> files = new ArrayList<>();
+        if (oldTree == null || oldTree.getHash().equals(tree.getHash())) {
+            tree.collectCheckout(root, directories, files, sparse);
+            writeFiles(directories, files);
+            writePairsToIndex(files, false);
+            return;
+        }
+        List<Path> removed = new ArrayList<>();
+        try (Metrics.Timer ignored = Metrics.time("checkout.compareTrees")) {
+            tree.collectChanges(oldTree, root, directories, files, removed, sparse);
+        }
+        logger.trace("Checkout changes {} files and removes {} paths", files.size(), removed.size());
+        Index currentIndex = getIndexForCheckout();
+        for (Path path : removed) {
+            if (isModified(path, oldTree, currentIndex)) {
+                logger.trace("File {} isn't removed because it was modified", path);
+                currentIndex.remove(path);
+                continue;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (DirectoryNotEmptyException e) {
+                logger.trace("Directory {} isn't removed because it contains unversioned files", path);
+            } catch (IOException e) {
+                throw new FileIOException(path.toString());
+            }
+            currentIndex.remove(path);
+        }
+        writeFiles(directories, files);
+        currentIndex.unstageAll();
+        for (PairPathString pair : files) {
+            try {
+                currentIndex.put(pair.getPath(), pair.getString(),
+                        Files.readAttributes(pair.getPath(), BasicFileAttributes.class), false);
+            } catch (IOException e) {
+                throw new FileIOException(pair.getPath().toString());
+            }
+        }
+        flushIndex();
     }
 
-    private void writePairsToIndex(@NotNull List<PairPathString> files) throws FileIOException {
-        try {
-            OutputStream outputStream = Files.newOutputStream(getIndex());
-            for (PairPathString pair : files) {
-                outputStream.write((pair.getPath().toString() + " " + pair.getString() + "\n").getBytes());
+    /**
+     * Updates the working tree after patterns of sparse checkout were changed. Only subtrees matching old or new
+     * patterns are read. Files that are no longer included are removed if their content is the same as in the
+     * tree, directories left empty are removed as well. Files that already exist aren't overwritten.
+     */
+    private void applySparseCheckout(@NotNull Tree tree, @NotNull SparseCheckout oldSparse,
+                                     @NotNull SparseCheckout sparse)
+            throws FileIOException, ClassNotFoundException, DirIOException {
+        Index currentIndex = getIndexForCheckout();
+        Set<Path> staged = currentIndex.getStaged().stream()
+                .map(PairPathString::getPath)
+                .collect(Collectors.toSet());
+        List<Path> oldDirectories = new ArrayList<>();
+        List<PairPathString> oldFiles = new ArrayList<>();
+        tree.collectCheckout(root, oldDirectories, oldFiles, oldSparse);
+        for (PairPathString pair : oldFiles) {
+            Path path = pair.getPath();
+            if (sparse.includes(path) || staged.contains(path)) {
+                continue;
+            }
+            try {
+                if (Files.isRegularFile(path) && currentIndex.hasContent(path,
+                        Files.readAttributes(path, BasicFileAttributes.class), pair.getString(), store)) {
+                    Files.delete(path);
+                } else {
+                    logger.trace("File {} isn't removed because it was changed", path);
+                }
+            } catch (IOException e) {
+                throw new FileIOException(path.toString());
+            }
+            currentIndex.remove(path);
+        }
+        for (int i = oldDirectories.size() - 1; i >= 0; i--) {
+            Path directory = oldDirectories.get(i);
+            if (sparse.shouldVisit(directory)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(directory);
+            } catch (DirectoryNotEmptyException e) {
+                logger.trace("Directory {} isn't removed because it contains other files", directory);
+            } catch (IOException e) {
+                throw new FileIOException(directory.toString());
             }
-            outputStream.close();
-        } catch (IOException e) {
-            throw new FileIOException(getIndex().toString());
         }
+        List<Path> directories = new ArrayList<>();
+        List<PairPathString> files = new ArrayList<>();
+        tree.collectCheckout(root, directories, files, sparse);
+        files.removeIf(pair -> staged.contains(pair.getPath()) || Files.exists(pair.getPath()));
+        writeFiles(directories, files);
+        for (PairPathString pair : files) {
+            try {
+                currentIndex.put(pair.getPath(), pair.getString(),
+                        Files.readAttributes(pair.getPath(), BasicFileAttributes.class), false);
+            } catch (IOException e) {
+                throw new FileIOException(pair.getPath().toString());
+            }
+        }
+        flushIndex();
     }
 
-    private void writeToHead(@NotNull Branch branch) throws FileIOException {
-        logger.trace("Writing to HEAD file...\n");
+    /**
+     * Checks whether a file differs from it's version in given tree. Files that aren't contained in the tree and
+     * staged files, whose hashes in the index differ from the tree, are considered modified. Directories and
+     * missing files aren't.
+     */
+    private boolean isModified(@NotNull Path path, @NotNull Tree tree, @NotNull Index currentIndex)
+            throws FileIOException, ClassNotFoundException {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        String hash = tree.findFileHash(root.relativize(path));
         try {
-            OutputStream outputStream = Files.newOutputStream(getHead());
-            outputStream.write((branch.getName() + "\n").getBytes());
-            outputStream.write((branch.getCommitHash() + "\n").getBytes());
-            outputStream.close();
+            return hash == null || !currentIndex.hasContent(path,
+                    Files.readAttributes(path, BasicFileAttributes.class), hash, store);
         } catch (IOException e) {
-            logger.trace("Writing failed because HEAD file is broken\n");
-            throw new FileIOException(getHead().toString());
+            throw new FileIOException(path.toString());
         }
-        logger.trace("Wrote to HEAD file successfully\n");
     }
 
-    private void writeToHead(@NotNull String commitHash)
-            throws FileIOException, HeadFileIsBrokenException, ClassNotFoundException {
-        logger.trace("Writing to HEAD file...\n");
-        String name = getHeadBranch().getName();
+    /**
+     * Creates given directories and writes given files. Files are written in parallel, files whose content is
+     * already the same according to stat data stored in the index are skipped.
+     * @param directories - directories that should exist, parents go before their children.
+     * @param files - paths to files and hashes of blobs that should be written to them.
+     */
+    private void writeFiles(@NotNull List<Path> directories, @NotNull List<PairPathString> files)
+            throws FileIOException, DirIOException, ClassNotFoundException {
+        try (Metrics.Timer ignored = Metrics.time("checkout.writeFiles")) {
+            for (Path directory : directories) {
+                if (Files.notExists(directory)) {
+                    try {
+                        Files.createDirectory(directory);
+                    } catch (IOException e) {
+                        throw new DirIOException(directory.toString());
+                    }
+                }
+            }
+            Index stat = getIndexForCheckout();
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (PairPathString file : files) {
+                tasks.add(() -> {
+                    Path path = file.getPath();
+                    try {
+                        if (Files.isRegularFile(path) && stat.isUnchanged(path,
+                                Files.readAttributes(path, BasicFileAttributes.class), file.getString())) {
+                            return false;
+                        }
+                    } catch (IOException e) {
+                        throw new FileIOException(path.toString());
+                    }
+                    ((Blob) store.read(file.getString())).writeContentTo(path);
+                    return true;
+                });
+            }
+            int written = 0;
+            for (boolean isWritten : runInParallel(tasks, ClassNotFoundException.class)) {
+                if (isWritten) {
+                    written++;
+                }
+            }
+            Metrics.add(Metrics.FILES_CHECKED_OUT, written);
+            logger.trace("Checkout wrote {} of {} files", written, files.size());
+        }
+    }
+
+    /**
+     * Replaces the index with entries for given files, that were just written to disk.
+     */
+    private void writePairsToIndex(@NotNull List<PairPathString> files, boolean staged) throws FileIOException {
+        index = new Index(root);
+        for (PairPathString pair : files) {
+            try {
+                index.put(pair.getPath(), pair.getString(),
+                        Files.readAttributes(pair.getPath(), BasicFileAttributes.class), staged);
+            } catch (IOException e) {
+                throw new FileIOException(pair.getPath().toString());
+            }
+        }
+        flushIndex();
+    }
+
+    /**
+     * Collects attributes of all files in given directory and it's subdirectories. Directory of MyGit and
+     * directories outside of sparse checkout patterns aren't visited. If a file is given, only it's attributes
+     * are collected.
+     */
+    @NotNull private Map<Path, BasicFileAttributes> walkFiles(@NotNull Path start, @NotNull SparseCheckout sparse)
+            throws WalkIOException {
+        Map<Path, BasicFileAttributes> files = new LinkedHashMap<>();
         try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    return dir.equals(getMyGitDir()) || !dir.equals(root) && !sparse.shouldVisit(dir)
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
 
-            OutputStream outputStream = Files.newOutputStream(getHead());
-            outputStream.write((name + "\n").getBytes());
-            outputStream.write((commitHash + "\n").getBytes());
-            outputStream.close();
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (!attributes.isDirectory() && sparse.includes(file)) {
+                        files.put(file, attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
         } catch (IOException e) {
-            logger.trace("Writing failed because HEAD file is broken\n");
-            throw new FileIOException(getHead().toString());
+            logger.trace("Walking failed because of broken files in {}", start);
+            throw new WalkIOException(start.toString());
+        }
+        return files;
+    }
+
+    private void collectMatchingFiles(@NotNull Collection<String> globs, @NotNull Map<Path, BasicFileAttributes> files)
+            throws FileIOException, WalkIOException, FileDoesntExistException {
+        if (globs.isEmpty()) {
+            return;
+        }
+        Map<Path, BasicFileAttributes> workingTree = walkFiles(root, SparseCheckout.read(root));
+        for (String glob : globs) {
+            logger.trace("Trying to add files matching {}", glob);
+            PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+            boolean found = false;
+            for (Map.Entry<Path, BasicFileAttributes> file : workingTree.entrySet()) {
+                if (matcher.matches(root.relativize(file.getKey()))) {
+                    files.put(file.getKey(), file.getValue());
+                    found = true;
+                }
+            }
+            if (!found) {
+                logger.trace("No files match {}", glob);
+                throw new FileDoesntExistException();
+            }
+        }
+    }
+
+    private void stageFiles(@NotNull Map<Path, BasicFileAttributes> files)
+            throws FileIOException, IndexFileIsBrokenException {
+        Index index = getIndex();
+        List<StagedFile> stagedFiles;
+        try (Metrics.Timer ignored = Metrics.time("add.saveBlobs")) {
+            stagedFiles = saveBlobs(files);
+        }
+        for (StagedFile file : stagedFiles) {
+            index.put(file.path, file.hash, file.attributes, true);
+            logger.trace("File {} was added", file.path);
+        }
+        flushIndex();
+    }
+
+    /**
+     * Reads given files and saves them as blobs. Files are processed in parallel, since most of the time is
+     * spent waiting for input/output.
+     */
+    @NotNull private List<StagedFile> saveBlobs(@NotNull Map<Path, BasicFileAttributes> files)
+            throws FileIOException {
+        List<Callable<StagedFile>> tasks = new ArrayList<>();
+        for (Map.Entry<Path, BasicFileAttributes> file : files.entrySet()) {
+            Path path = file.getKey();
+            tasks.add(() -> {
+                Blob blob = Blob.fromFile(store, path);
+                return new StagedFile(path, blob.getHash(), file.getValue());
+            });
         }
-        logger.trace("Wrote to HEAD file successfully\n");
+        return runInParallel(tasks, FileIOException.class);
+    }
+
+    /**
+     * Runs input/output tasks on the shared pool and returns their results in order of the tasks. Exceptions thrown
+     * by tasks are rethrown as they are.
+     * @param tasks - tasks that should be run.
+     * @param exceptionType - checked exception that tasks can throw besides FileIOException.
+     * @throws FileIOException - thrown if one of tasks failed to read or write a file or the thread was interrupted.
+     */
+    @NotNull private <T, E extends Exception> List<T> runInParallel(@NotNull List<Callable<T>> tasks,
+                                                                   @NotNull Class<E> exceptionType)
+            throws FileIOException, E {
+        List<T> result = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : IO_POOL.invokeAll(tasks)) {
+                result.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FileIOException) {
+                throw (FileIOException) cause;
+            }
+            if (exceptionType.isInstance(cause)) {
+                throw exceptionType.cast(cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileIOException(root.toString());
+        }
+        return result;
+    }
+
+    private void writeToHead(@NotNull Branch branch) throws FileIOException {
+        logger.trace("Writing to HEAD file...");
+        writeAtomically(getHead(), branch.getName() + "\n" + branch.getCommitHash() + "\n");
+        logger.trace("Wrote to HEAD file successfully");
+    }
+
+    private void writeToHead(@NotNull String commitHash)
+            throws FileIOException, HeadFileIsBrokenException, ClassNotFoundException {
+        logger.trace("Writing to HEAD file...");
+        String name = getHeadBranch().getName();
+        writeAtomically(getHead(), name + "\n" + commitHash + "\n");
+        logger.trace("Wrote to HEAD file successfully");
     }
 
     private MyGitObject readFromHead(HeadType type) throws FileIOException, HeadFileIsBrokenException,
             ClassNotFoundException {
-        logger.trace("Reading from HEAD file\n");
+        logger.trace("Reading from HEAD file");
         List<String> lines;
         try {
             lines = Files.readAllLines(getHead());
         } catch (IOException e) {
-            logger.trace("Reading failed because HEAD file is broken\n");
+            logger.trace("Reading failed because HEAD file is broken");
             throw new FileIOException(getHead().toString());
         }
         if (lines.size() != 2) {
-            logger.trace("Reading failed because HEAD file is broken\n");
+            logger.trace("Reading failed because HEAD file is broken");
             throw new HeadFileIsBrokenException();
         }
-        logger.trace("Reading from HEAD file successfully\n");
+        logger.trace("Reading from HEAD file successfully");
         if (type.equals(HeadType.BRANCH)) {
-            return MyGitObject.read(getBranchesDir().resolve(lines.get(0)));
+            return store.readBranch(lines.get(0));
         } else {
-            return MyGitObject.read(getObjectsDir().resolve(lines.get(1)));
+            return store.read(lines.get(1));
         }
     }
 
@@ -617,81 +1276,243 @@ public class RepositoryManager {
         return (Branch) readFromHead(HeadType.BRANCH);
     }
 
-    private Tree buildCommitTree(@NotNull List<PairPathString> pathsAndHashes)
-            throws FileIOException, HeadFileIsBrokenException, ClassNotFoundException {
-        logger.trace("Building commit tree...\n");
-        Tree tree = getHeadCommit().getTree();
+    private Tree buildCommitTree(@NotNull Tree baseTree, @NotNull List<PairPathString> pathsAndHashes)
+            throws FileIOException, ClassNotFoundException {
+        logger.trace("Building commit tree...");
+        Map<Path, String> files = new LinkedHashMap<>();
         for (PairPathString pair : pathsAndHashes) {
-            tree = tree.addPathToTree(root.relativize(pair.getPath()), pair.getString());
+            files.put(root.relativize(pair.getPath()), pair.getString());
         }
-        logger.trace("Built commit tree successfully\n");
+        Tree tree = baseTree.addPathsToTree(files);
+        logger.trace("Built commit tree successfully");
         return tree;
     }
 
-    @Nullable private Branch getBranch(@NotNull String name) {
-        for (Branch branch : branches) {
-            if (branch.getName().equals(name)) {
-                return branch;
-            }
+    private void writeMergeHead(@NotNull String commitHash, @NotNull String treeHash) throws FileIOException {
+        writeAtomically(root.resolve(Constants.mergeHead), commitHash + "\n" + treeHash + "\n");
+    }
+
+    /**
+     * Writes metadata file through a temporary file, which then replaces it. Thus, readers never see the file
+     * partially written.
+     */
+    private void writeAtomically(@NotNull Path file, @NotNull String content) throws FileIOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ObjectStore.TEMPORARY_SUFFIX);
+        try {
+            Files.write(temporaryFile, content.getBytes());
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Metrics.increment(Metrics.METADATA_FILES_REPLACED);
+        } catch (IOException e) {
+            logger.trace("Writing to {} failed", file);
+            throw new FileIOException(file.toString());
         }
-        return null;
     }
 
-    private void clearIndex() throws FileIOException {
-        logger.trace("Clearing index file...\n");
+    /**
+     * @return - hash of the merged commit and hash of the merge result or null if no merge is in progress.
+     */
+    @Nullable private List<String> readMergeHead() throws FileIOException {
+        Path file = root.resolve(Constants.mergeHead);
+        if (Files.notExists(file)) {
+            return null;
+        }
         try {
-            OutputStream outputStream = Files.newOutputStream(getIndex());
-            outputStream.write(new byte[0]);
-            outputStream.close();
+            List<String> lines = Files.readAllLines(file);
+            return lines.size() < 2 ? null : lines;
         } catch (IOException e) {
-            logger.trace("Clearing failed because index file is broken\n");
-            throw new FileIOException(getIndex().toString());
+            throw new FileIOException(file.toString());
         }
-        logger.trace("Cleared index file successfully\n");
     }
 
-    private void removeFromIndex(@NotNull Path path) throws FileIOException, IndexFileIsBrokenException {
-        logger.trace("Removing " + path + " from index file...\n");
-        List<String> lines;
+    private void removeMergeHead() throws FileIOException {
         try {
-            lines = Files.readAllLines(getIndex());
+            Files.deleteIfExists(root.resolve(Constants.mergeHead));
         } catch (IOException e) {
-            logger.trace("Remove failed because index file is broken\n");
-            throw new FileIOException(getIndex().toString());
+            throw new FileIOException(root.resolve(Constants.mergeHead).toString());
         }
-        String file = "";
-        for (String line: lines) {
-            String[] strings = line.split(" ");
-            if (strings.length != 2) {
-                logger.trace("Remove failed because index file is broken\n");
-                throw new IndexFileIsBrokenException();
-            }
-            if (strings[0].equals(path.toString())) {
-                continue;
+    }
+
+    /**
+     * Reads a branch from disk, so branches changed by other managers or processes are always up to date.
+     */
+    @Nullable private Branch getBranch(@NotNull String name) throws FileIOException, ClassNotFoundException {
+        Path file = getBranchesDir().resolve(name).normalize();
+        if (!getBranchesDir().equals(file.getParent()) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        return store.readBranch(name);
+    }
+
+    @NotNull private Commit resolveCommit(@NotNull String name)
+            throws FileIOException, FileDoesntExistException, ClassNotFoundException {
+        Branch branch = getBranch(name);
+        String hash = branch == null ? name : branch.getCommitHash();
+        if (!store.contains(hash)) {
+            logger.trace("There is no branch or commit with name {}", name);
+            throw new FileDoesntExistException();
+        }
+        MyGitObject object = store.read(hash);
+        if (!(object instanceof Commit)) {
+            logger.trace("Object {} isn't a commit", name);
+            throw new FileDoesntExistException();
+        }
+        return (Commit) object;
+    }
+
+    @NotNull private byte[] readBlob(@NotNull String hash) throws FileIOException, ClassNotFoundException {
+        return ((Blob) store.read(hash)).getContent();
+    }
+
+    /**
+     * Removes the file from the index and writes the index. Callers should hold the lock for writing.
+     */
+    private void resetFile(@NotNull Path path)
+            throws FileInAnotherDirectoryException, FileIOException, IndexFileIsBrokenException {
+        if (!path.startsWith(root)) {
+            throw new FileInAnotherDirectoryException();
+        }
+        removeFromIndex(path);
+        flushIndex();
+    }
+
+    /**
+     * Builds status of the working tree. Callers should hold the lock for reading or writing.
+     */
+    @NotNull private StatusObject collectStatus() throws FileIOException, IndexFileIsBrokenException,
+            HeadFileIsBrokenException, ClassNotFoundException, WalkIOException {
+        logger.trace("Creating status...");
+        StatusObject status = new StatusObject();
+        Set<Path> processed = new HashSet<>();
+        Index index = readIndex();
+        for (PairPathString pair : index.getStaged()) {
+            status.addStaged(pair.getPath());
+            processed.add(pair.getPath());
+        }
+        SparseCheckout sparse = SparseCheckout.read(root);
+        Map<Path, BasicFileAttributes> files = walkFiles(root, sparse);
+        getHeadCommit().getTree().updateStatus(root, processed, status, index, files, sparse);
+        files.keySet().stream()
+                .filter(path -> !processed.contains(path))
+                .forEach(status::addUnversioned);
+        saveIndexCache(index);
+        logger.trace("Created status successfully");
+        return status;
+    }
+
+    private void removeFromIndex(@NotNull Path path) throws FileIOException, IndexFileIsBrokenException {
+        logger.trace("Removing {} from index file...", path);
+        getIndex().remove(path);
+        logger.trace("Removed {} from index file successfully", path);
+    }
+
+    /**
+     * Returns index of the repository for an operation that changes it. It's read from disk only once, after that
+     * all changes are made in memory until they are flushed. It's read again only if the index file was replaced
+     * by another manager or process.
+     */
+    @NotNull private Index getIndex() throws FileIOException, IndexFileIsBrokenException {
+        if (index == null || !index.isChanged() && index.isOutdated()) {
+            try {
+                index = Index.read(root);
+            } catch (IndexFileIsBrokenException e) {
+                logger.trace("Reading index failed because index file is broken");
+                throw e;
             }
-            file += line + "\n";
         }
+        return index;
+    }
+
+    /**
+     * Returns index of the repository. Broken index is replaced with an empty one, since checkout rewrites
+     * the index anyway, files just can't be skipped by their stat data.
+     */
+    @NotNull private Index getIndexForCheckout() throws FileIOException {
         try {
-            OutputStream outputStream = Files.newOutputStream(getIndex());
-            outputStream.write(file.getBytes());
-            outputStream.close();
-        } catch (IOException e) {
-            logger.trace("Remove failed because index file is broken\n");
-            throw new FileIOException(getIndex().toString());
+            return getIndex();
+        } catch (IndexFileIsBrokenException e) {
+            index = new Index(root);
+            return index;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the index for a read-only operation, so several of them can run at once. The index is
+     * kept in memory and read from disk only if the index file was replaced by another manager or process.
+     */
+    @NotNull private Index readIndex() throws FileIOException, IndexFileIsBrokenException {
+        synchronized (indexMonitor) {
+            if (index != null && !index.isChanged() && !index.isOutdated()) {
+                return index.snapshot();
+            }
+            Index result;
+            try {
+                result = Index.read(root);
+            } catch (IndexFileIsBrokenException e) {
+                logger.trace("Reading index failed because index file is broken");
+                throw e;
+            }
+            if (index == null || !index.isChanged()) {
+                index = result;
+                return result.snapshot();
+            }
+            return result;
         }
-        logger.trace("Removed " + path + " from index file successfully\n");
     }
 
-    private void addBranch(@NotNull Branch branch) {
-        branches.add(branch);
+    /**
+     * Saves stat data cached by a read-only operation. It's skipped if the repository is locked by someone else
+     * or the index file was replaced after it was read, since it's only a cache.
+     */
+    private void saveIndexCache(@NotNull Index index) throws FileIOException {
+        if (!index.isChanged()) {
+            return;
+        }
+        RepositoryLock.Handle handle = lock.tryLockForCaches();
+        if (handle == null) {
+            logger.trace("Index isn't saved because repository is locked");
+            return;
+        }
+        try (RepositoryLock.Handle ignored = handle) {
+            if (!index.isOutdated()) {
+                index.write();
+                synchronized (indexMonitor) {
+                    if (this.index == null || !this.index.isChanged()) {
+                        this.index = index;
+                    }
+                }
+            }
+        }
     }
 
-    private Path getMyGitDir() {
-        return root.resolve(Constants.myGitDirectory);
+    private void flushIndex() throws FileIOException {
+        if (index != null && index.isChanged()) {
+            logger.trace("Writing index file...");
+            index.write();
+        }
+    }
+
+    /**
+     * File that was saved as a blob and should be staged.
+     */
+    private static class StagedFile {
+
+        private Path path;
+        private String hash;
+        private BasicFileAttributes attributes;
+
+        StagedFile(@NotNull Path path, @NotNull String hash, @NotNull BasicFileAttributes attributes) {
+            this.path = path;
+            this.hash = hash;
+            this.attributes = attributes;
+        }
     }
 
-    private Path getObjectsDir() {
-        return root.resolve(Constants.objectsDirectory);
+    ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    private Path getMyGitDir() {
+        return root.resolve(Constants.myGitDirectory);
     }
 
     private Path getBranchesDir() {
@@ -702,10 +1523,6 @@ public class RepositoryManager {
         return root.resolve(Constants.logsDirectory);
     }
 
-    private Path getIndex() {
-        return root.resolve(Constants.index);
-    }
-
     private Path getHead() {
         return root.resolve(Constants.head);
     }
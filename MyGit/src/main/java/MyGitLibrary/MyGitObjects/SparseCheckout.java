@@ -0,0 +1,154 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Constants;
+import MyGitLibrary.Exceptions.FileIOException;
+import MyGitLibrary.Exceptions.FileInAnotherDirectoryException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class represents patterns of sparse checkout, which are stored in .mygit/sparse-checkout one per line.
+ * Every pattern is a path to a file or a directory relative to the root of repository. Only files equal to one of
+ * patterns or contained in one of them are written to disk and tracked in the index, other subtrees aren't read
+ * during checkout and aren't walked by status. If there are no patterns, the whole tree is checked out.
+ */
+class SparseCheckout {
+
+    private static final SparseCheckout NONE = new SparseCheckout(Collections.emptyList(), Collections.emptyList());
+
+    private List<String> patterns;
+    private List<Path> paths;
+
+    private SparseCheckout(@NotNull List<String> patterns, @NotNull List<Path> paths) {
+        this.patterns = Collections.unmodifiableList(patterns);
+        this.paths = paths;
+    }
+
+    /**
+     * @return - sparse checkout that includes every path.
+     */
+    @NotNull static SparseCheckout none() {
+        return NONE;
+    }
+
+    /**
+     * Reads patterns of repository in given directory. Empty lines, comments starting with '#' and patterns that
+     * point outside of the repository are skipped.
+     * @param root - root of the repository.
+     * @return - sparse checkout of the repository.
+     * @throws FileIOException - thrown if the file with patterns can't be read.
+     */
+    @NotNull static SparseCheckout read(@NotNull Path root) throws FileIOException {
+        Path file = root.resolve(Constants.sparseCheckout);
+        if (Files.notExists(file)) {
+            return NONE;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file);
+        } catch (IOException e) {
+            throw new FileIOException(file.toString());
+        }
+        List<String> patterns = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+        for (String line : lines) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            Path path = resolve(root, pattern);
+            if (path != null) {
+                patterns.add(pattern);
+                paths.add(path);
+            }
+        }
+        return patterns.isEmpty() ? NONE : new SparseCheckout(patterns, paths);
+    }
+
+    /**
+     * Checks that given patterns point to paths inside of the repository, but not to it's root or MyGit directory.
+     * @param root - root of the repository.
+     * @param patterns - patterns that should be checked.
+     * @throws FileInAnotherDirectoryException - thrown if one of patterns points outside of the repository.
+     */
+    static void validate(@NotNull Path root, @NotNull Collection<String> patterns)
+            throws FileInAnotherDirectoryException {
+        for (String pattern : patterns) {
+            if (resolve(root, pattern.trim()) == null) {
+                throw new FileInAnotherDirectoryException();
+            }
+        }
+    }
+
+    /**
+     * @return - true if only some paths are checked out.
+     */
+    boolean isEnabled() {
+        return !patterns.isEmpty();
+    }
+
+    /**
+     * @return - patterns in the order they were written.
+     */
+    @NotNull List<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @param path - absolute path to a file or a directory.
+     * @return - true if the path is equal to one of patterns or contained in one of them.
+     */
+    boolean includes(@NotNull Path path) {
+        if (!isEnabled()) {
+            return true;
+        }
+        for (Path pattern : paths) {
+            if (path.startsWith(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param directory - absolute path to a directory.
+     * @return - true if the directory is included or contains one of patterns, so it should be walked.
+     */
+    boolean shouldVisit(@NotNull Path directory) {
+        if (includes(directory)) {
+            return true;
+        }
+        for (Path pattern : paths) {
+            if (pattern.startsWith(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path - absolute path to a file or a directory.
+     * @param isDirectory - whether the path is a directory.
+     * @return - true if the path should be checked out or walked.
+     */
+    boolean matches(@NotNull Path path, boolean isDirectory) {
+        return isDirectory ? shouldVisit(path) : includes(path);
+    }
+
+    @Nullable private static Path resolve(@NotNull Path root, @NotNull String pattern) {
+        Path path = root.resolve(pattern).normalize();
+        if (pattern.isEmpty() || !path.startsWith(root) || path.equals(root)
+                || path.startsWith(root.resolve(Constants.myGitDirectory))) {
+            return null;
+        }
+        return path;
+    }
+}
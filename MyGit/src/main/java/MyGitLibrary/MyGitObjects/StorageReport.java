@@ -0,0 +1,62 @@
+package MyGitLibrary.MyGitObjects;
+
+/**
+ * This class represents statistics of blobs stored in a repository. Blobs saved by older versions of MyGit were
+ * identified by content together with name of the file, so equal files with different names may be stored several
+ * times. The report shows how much space is taken by such copies.
+ */
+public class StorageReport {
+
+    private long blobCount;
+    private long uniqueContentCount;
+    private long namedBlobCount;
+    private long totalSize;
+    private long uniqueSize;
+
+    StorageReport(long blobCount, long uniqueContentCount, long namedBlobCount, long totalSize, long uniqueSize) {
+        this.blobCount = blobCount;
+        this.uniqueContentCount = uniqueContentCount;
+        this.namedBlobCount = namedBlobCount;
+        this.totalSize = totalSize;
+        this.uniqueSize = uniqueSize;
+    }
+
+    public long getBlobCount() {
+        return blobCount;
+    }
+
+    /**
+     * @return - number of different contents among all blobs.
+     */
+    public long getUniqueContentCount() {
+        return uniqueContentCount;
+    }
+
+    /**
+     * @return - number of blobs whose hash depends on name of the file.
+     */
+    public long getNamedBlobCount() {
+        return namedBlobCount;
+    }
+
+    /**
+     * @return - total size of content of all blobs in bytes.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return - size of content of all blobs in bytes if every content was stored once.
+     */
+    public long getUniqueSize() {
+        return uniqueSize;
+    }
+
+    /**
+     * @return - number of bytes taken by blobs that duplicate content of other blobs.
+     */
+    public long getDuplicateSize() {
+        return totalSize - uniqueSize;
+    }
+}
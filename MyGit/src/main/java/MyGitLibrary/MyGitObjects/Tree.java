@@ -1,31 +1,36 @@
 package MyGitLibrary.MyGitObjects;
 
-import MyGitLibrary.Constants;
-import MyGitLibrary.Exceptions.DirIOException;
 import MyGitLibrary.Exceptions.FileIOException;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.Serializable;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Set;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
 
 /**
  * Class that represents a directory in hierarchy of VCS.
+ * Tree consists of entries with names, types and hashes of it's children sorted by name. Thus, children can be found
+ * with binary search and trees can be traversed without reading blobs at all.
+ * Hash of a tree depends only on it's entries, not on name of the directory, so equal subtrees in different
+ * directories are stored once. Trees written before keep hashes they were written with.
  */
-class Tree implements MyGitObject, Serializable {
+class Tree implements MyGitObject {
 
-    private List<String> children;
+    /**
+     * Version of the format in which trees stored only hashes of their children.
+     */
+    static final byte VERSION_WITHOUT_ENTRIES = 1;
+
+    private List<TreeEntry> entries;
     private String directoryName;
     private String hash;
-    private String root;
+    private ObjectStore store;
 
     @Override
     public String getType() {
@@ -37,111 +42,241 @@ class Tree implements MyGitObject, Serializable {
         return hash;
     }
 
-    private String getDirectoryName() {
+    String getDirectoryName() {
         return directoryName;
     }
 
-    Tree(@NotNull Path root, @NotNull String directoryName, @NotNull List<String> children)
+    List<TreeEntry> getEntries() {
+        return entries;
+    }
+
+    Tree(@NotNull ObjectStore store, @NotNull String directoryName, @NotNull List<TreeEntry> entries)
             throws FileIOException {
-        this.root = root.toString();
+        this.store = store;
         this.directoryName = directoryName;
-        this.children = children;
+        this.entries = entries;
+        Collections.sort(entries);
         updateHash();
-        MyGitObject.write(this, root);
+        store.write(this);
     }
 
-    private Tree(@NotNull Path root, @NotNull String directoryName) throws FileIOException {
-        this.root = root.toString();
+    /**
+     * Creates a tree that was read from disk. It isn't written again.
+     */
+    Tree(@NotNull ObjectStore store, @NotNull String hash, @NotNull String directoryName,
+         @NotNull List<TreeEntry> entries) {
+        this.store = store;
+        this.hash = hash;
         this.directoryName = directoryName;
-        children = new ArrayList<>();
-        updateHash();
-        MyGitObject.write(this, root);
+        this.entries = entries;
+    }
+
+    /**
+     * Creates an empty tree, that is only used to build another one. It isn't written.
+     */
+    private Tree(@NotNull ObjectStore store, @NotNull String directoryName) {
+        this.store = store;
+        this.directoryName = directoryName;
+        entries = new ArrayList<>();
+    }
+
+    /**
+     * Creates a tree that was written in format, in which trees stored only hashes of their children. Children
+     * are read to find out their names and types.
+     * @throws IOException - thrown if some of children can't be read.
+     */
+    @NotNull static Tree fromChildren(@NotNull ObjectStore store, @NotNull String hash, @NotNull String directoryName,
+                                      @NotNull List<String> children) throws IOException {
+        Map<String, TreeEntry> entries = new TreeMap<>();
+        for (String childHash : children) {
+            MyGitObject child;
+            try {
+                child = store.read(childHash);
+            } catch (FileIOException | ClassNotFoundException e) {
+                throw new IOException(e.getMessage());
+            }
+            String name = child.getType().equals(TREE) ? ((Tree) child).getDirectoryName()
+                    : ((Blob) child).getFileName();
+            entries.put(name, new TreeEntry(name, child.getType(), childHash));
+        }
+        return new Tree(store, hash, directoryName, new ArrayList<>(entries.values()));
+    }
+
+    /**
+     * Finds an entry by name with binary search.
+     * @param name - name of a file or a directory.
+     * @return - the entry or null if there is no entry with such name.
+     */
+    @Nullable TreeEntry getEntry(@NotNull String name) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = entries.get(middle).getName().compareTo(name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return entries.get(middle);
+            }
+        }
+        return null;
     }
 
     /**
-     * This method takes path to the file and file's hash and returns a Tree that is equal to the Tree in which
-     * the method was called with added file.
-     * @param path - path to the file that should be added.
-     * @param hash - hash of file.
-     * @return - new Tree, that is equal to this one with added file.
+     * Finds hash of a file by it's path. Only subtrees on the path are read.
+     * @param path - path to the file relative to this Tree.
+     * @return - hash of the file or null if there is no such file.
      * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
      */
-    Tree addPathToTree(@NotNull Path path, @NotNull String hash) throws FileIOException, ClassNotFoundException {
-        if (path.getNameCount() == 0) {
-            throw new IllegalArgumentException();
-        }
-        if (path.getNameCount() == 1) {
-            Blob blob = (Blob) getChild(hash);
-            List<String> newChildren = new ArrayList<>();
-            for (String childHash : children) {
-                MyGitObject child = getChild(childHash);
-                if (!child.getType().equals(MyGitObject.BLOB) ||
-                        !((Blob) child).getFileName().equals(blob.getFileName())) {
-                    newChildren.add(childHash);
-                }
+    @Nullable String findFileHash(@NotNull Path path) throws FileIOException, ClassNotFoundException {
+        Tree tree = this;
+        for (int i = 0; i < path.getNameCount(); i++) {
+            TreeEntry entry = tree.getEntry(path.getName(i).toString());
+            if (entry == null) {
+                return null;
             }
-            newChildren.add(hash);
-            return new Tree(Paths.get(root), directoryName, newChildren);
+            if (i == path.getNameCount() - 1) {
+                return entry.isTree() ? null : entry.getHash();
+            }
+            if (!entry.isTree()) {
+                return null;
+            }
+            tree = tree.getSubtree(entry);
         }
-        List<String> newChildren = new ArrayList<>();
-        boolean foundInTree = false;
-        String directory = path.getName(0).toString();
-        for (String childHash : children) {
-            MyGitObject child = getChild(childHash);
-            if (child.getType().equals(MyGitObject.TREE) &&
-                    ((Tree) child).getDirectoryName().equals(directory)) {
-                foundInTree = true;
-                newChildren.add(((Tree) child)
-                        .addPathToTree(path.subpath(1, path.getNameCount()), hash)
-                        .getHash());
+        return null;
+    }
+
+    /**
+     * This method takes paths to files and their hashes and returns a Tree that is equal to the Tree in which
+     * the method was called with added files. Paths are grouped by their first directory, so every changed
+     * subdirectory is processed once and only resulting Trees are written, starting from the deepest ones.
+     * Subtrees that don't contain added files are reused as they are.
+     * @param files - map from path to the file relative to this Tree to hash of the file.
+     * @return - new Tree, that is equal to this one with added files.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    Tree addPathsToTree(@NotNull Map<Path, String> files) throws FileIOException, ClassNotFoundException {
+        Map<String, TreeEntry> newEntries = new TreeMap<>();
+        Map<String, Map<Path, String>> directories = new TreeMap<>();
+        for (TreeEntry entry : entries) {
+            newEntries.put(entry.getName(), entry);
+        }
+        for (Map.Entry<Path, String> file : files.entrySet()) {
+            Path path = file.getKey();
+            if (path.getNameCount() == 0) {
+                throw new IllegalArgumentException();
+            }
+            String name = path.getName(0).toString();
+            if (path.getNameCount() == 1) {
+                newEntries.put(name, new TreeEntry(name, BLOB, file.getValue()));
             } else {
-                newChildren.add(childHash);
+                directories.computeIfAbsent(name, directory -> new LinkedHashMap<>())
+                        .put(path.subpath(1, path.getNameCount()), file.getValue());
             }
         }
-        if (!foundInTree) {
-            newChildren.add(new Tree(Paths.get(root), directory)
-                    .addPathToTree(path.subpath(1, path.getNameCount()), hash)
-                    .getHash());
+        for (Map.Entry<String, Map<Path, String>> directory : directories.entrySet()) {
+            String name = directory.getKey();
+            TreeEntry entry = getEntry(name);
+            Tree subtree = entry != null && entry.isTree() ? getSubtree(entry) : new Tree(store, name);
+            newEntries.put(name, new TreeEntry(name, TREE, subtree.addPathsToTree(directory.getValue()).getHash()));
         }
-        return new Tree(Paths.get(root), directoryName, newChildren);
+        return new Tree(store, directoryName, new ArrayList<>(newEntries.values()));
     }
 
     /**
      * This method recursively constructs list of all paths to files contained in this Tree and it's children and
-     * files' hashes.
+     * files' hashes, together with list of directories that should exist. Nothing is written, so the whole
+     * checkout is known before files are written.
      * @param currentPath - path to the Tree from the root.
-     * @return - list of pairs consisting of path to file and it's hash. This list should be checked out.
+     * @param directories - list to which paths to subdirectories are added, parents go before their children.
+     * @param files - list to which pairs consisting of path to file and it's hash are added.
+     * @param sparse - sparse checkout, entries outside of it's patterns are skipped without being read.
      * @throws FileIOException - thrown if something went wrong during input/output to/from files.
-     * @throws DirIOException - thrown if something went wrong during creating directory.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
      */
-    List<PairPathString> checkoutTree(@NotNull Path currentPath) throws FileIOException,
-            ClassNotFoundException, DirIOException {
-        List<PairPathString> files = new ArrayList<>();
-        for (String childHash : children) {
-            MyGitObject child = getChild(childHash);
-            if (child.getType().equals(BLOB)) {
-                Path filePath = currentPath.resolve(((Blob) child).getFileName());
-                try {
-                    OutputStream outputStream = Files.newOutputStream(filePath);
-                    outputStream.write(((Blob) child).getContent());
-                    outputStream.close();
-                    files.add(new PairPathString(filePath, childHash));
-                } catch (IOException e) {
-                    throw new FileIOException(filePath.toString());
+    void collectCheckout(@NotNull Path currentPath, @NotNull List<Path> directories,
+                         @NotNull List<PairPathString> files, @NotNull SparseCheckout sparse)
+            throws FileIOException, ClassNotFoundException {
+        for (TreeEntry entry : entries) {
+            Path path = currentPath.resolve(entry.getName());
+            if (!sparse.matches(path, entry.isTree())) {
+                continue;
+            }
+            if (entry.isTree()) {
+                directories.add(path);
+                getSubtree(entry).collectCheckout(path, directories, files, sparse);
+            } else {
+                files.add(new PairPathString(path, entry.getHash()));
+            }
+        }
+    }
+
+    /**
+     * This method recursively compares this Tree with an old one and collects changes that turn checkout of the old
+     * Tree into checkout of this one. Subtrees with equal hashes are skipped without being read.
+     * @param old - the old Tree or null if there was nothing at the place of this Tree.
+     * @param currentPath - path to the Tree from the root.
+     * @param directories - list to which paths to new subdirectories are added, parents go before their children.
+     * @param files - list to which paths and hashes of added and modified files are added.
+     * @param removed - list to which paths to removed files and directories are added, children go before their
+     *                parents. Files that are replaced with directories and vice versa are removed as well.
+     * @param sparse - sparse checkout, entries outside of it's patterns are skipped without being read.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    void collectChanges(@Nullable Tree old, @NotNull Path currentPath, @NotNull List<Path> directories,
+                        @NotNull List<PairPathString> files, @NotNull List<Path> removed,
+                        @NotNull SparseCheckout sparse) throws FileIOException, ClassNotFoundException {
+        List<TreeEntry> oldEntries = old == null ? Collections.emptyList() : old.entries;
+        int i = 0;
+        int j = 0;
+        while (i < entries.size() || j < oldEntries.size()) {
+            TreeEntry entry = i < entries.size() ? entries.get(i) : null;
+            TreeEntry oldEntry = j < oldEntries.size() ? oldEntries.get(j) : null;
+            int comparison = entry == null ? 1 : oldEntry == null ? -1 : entry.compareTo(oldEntry);
+            if (comparison > 0) {
+                Path path = currentPath.resolve(oldEntry.getName());
+                if (sparse.matches(path, oldEntry.isTree())) {
+                    old.collectRemoved(oldEntry, path, removed);
                 }
+                j++;
+                continue;
+            }
+            i++;
+            Path path = currentPath.resolve(entry.getName());
+            if (!sparse.matches(path, entry.isTree())
+                    && (comparison < 0 || !sparse.matches(path, oldEntry.isTree()))) {
+                if (comparison == 0) {
+                    j++;
+                }
+                continue;
+            }
+            if (comparison < 0) {
+                oldEntry = null;
             } else {
-                Path nextDirectory = currentPath.resolve(((Tree) child).getDirectoryName());
-                if (Files.notExists(nextDirectory)) {
-                    try {
-                        Files.createDirectory(nextDirectory);
-                    } catch (IOException e) {
-                        throw new DirIOException(nextDirectory.toString());
-                    }
+                j++;
+                if (oldEntry.getHash().equals(entry.getHash()) && oldEntry.isTree() == entry.isTree()) {
+                    continue;
+                }
+                if (oldEntry.isTree() != entry.isTree()) {
+                    old.collectRemoved(oldEntry, path, removed);
+                    oldEntry = null;
                 }
-                files.addAll(((Tree) child).checkoutTree(nextDirectory));
+            }
+            if (entry.isTree()) {
+                if (oldEntry == null) {
+                    directories.add(path);
+                }
+                getSubtree(entry).collectChanges(oldEntry == null ? null : old.getSubtree(oldEntry), path,
+                        directories, files, removed, sparse);
+            } else {
+                files.add(new PairPathString(path, entry.getHash()));
             }
         }
-        return files;
     }
 
     /**
@@ -150,31 +285,33 @@ class Tree implements MyGitObject, Serializable {
      * @param processed - Set of files that were already processed. For example, files that are staged for commit
      *                  and contained in index.
      * @param status - StatusObject in which files should be added.
+     * @param index - index, that caches hashes of files by their stat data.
+     * @param files - attributes of all files in the working tree.
+     * @param sparse - sparse checkout, files outside of it's patterns aren't reported as deleted.
      * @throws FileIOException - thrown if something went wrong during input/output to/from files.
      * @throws ClassNotFoundException - normally it shouldn't be thrown.
      */
-    void updateStatus(@NotNull Path curPath, @NotNull Set<Path> processed, @NotNull StatusObject status)
-            throws FileIOException, ClassNotFoundException {
-        for (String childHash : children) {
-            MyGitObject child = getChild(childHash);
-            if (child.getType().equals(MyGitObject.TREE)) {
-                ((Tree) child).updateStatus(curPath.resolve(((Tree) child).getDirectoryName()), processed, status);
+    void updateStatus(@NotNull Path curPath, @NotNull Set<Path> processed, @NotNull StatusObject status,
+                      @NotNull Index index, @NotNull Map<Path, BasicFileAttributes> files,
+                      @NotNull SparseCheckout sparse) throws FileIOException, ClassNotFoundException {
+        for (TreeEntry entry : entries) {
+            Path path = curPath.resolve(entry.getName());
+            if (!sparse.matches(path, entry.isTree())) {
+                continue;
+            }
+            if (entry.isTree()) {
+                getSubtree(entry).updateStatus(path, processed, status, index, files, sparse);
             } else {
-                Path path = curPath.resolve(Paths.get(((Blob) child).getFileName()));
                 if (processed.contains(path)) {
                     continue;
                 }
                 processed.add(path);
-                if (Files.exists(path)) {
-                    try {
-                        byte[] content = Files.readAllBytes(path);
-                        if (Arrays.equals(content, ((Blob) child).getContent())) {
-                            status.addUnmodified(path);
-                        } else {
-                            status.addModified(path);
-                        }
-                    } catch (IOException e) {
-                        throw new FileIOException(path.toString());
+                BasicFileAttributes attributes = files.get(path);
+                if (attributes != null) {
+                    if (index.hasContent(path, attributes, entry.getHash(), store)) {
+                        status.addUnmodified(path);
+                    } else {
+                        status.addModified(path);
                     }
                 } else {
                     status.addDeleted(path);
@@ -183,14 +320,101 @@ class Tree implements MyGitObject, Serializable {
         }
     }
 
-    private MyGitObject getChild(String childHash) throws FileIOException, ClassNotFoundException {
-        return MyGitObject.read(Paths.get(root).resolve(Constants.objectsDirectory).resolve(childHash));
+    /**
+     * Entries are written sorted by name. Every entry consists of type tag, name and hash.
+     */
+    @Override
+    public void writePayload(@NotNull DataOutputStream out) throws IOException {
+        ObjectCodec.writeString(out, directoryName);
+        out.writeInt(entries.size());
+        for (TreeEntry entry : entries) {
+            out.writeByte(ObjectCodec.getTag(entry.getType()));
+            ObjectCodec.writeString(out, entry.getName());
+            ObjectCodec.writeHash(out, entry.getHash());
+        }
     }
 
+    static Tree readPayload(@NotNull ObjectStore store, @NotNull String hash, byte version,
+                            @NotNull DataInputStream in) throws IOException {
+        String directoryName = ObjectCodec.readString(in);
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Negative number of children");
+        }
+        if (version == VERSION_WITHOUT_ENTRIES) {
+            List<String> children = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                children.add(ObjectCodec.readHash(in));
+            }
+            return fromChildren(store, hash, directoryName, children);
+        }
+        List<TreeEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String type = ObjectCodec.getType(in.readByte());
+            entries.add(new TreeEntry(ObjectCodec.readString(in), type, ObjectCodec.readHash(in)));
+        }
+        return new Tree(store, hash, directoryName, entries);
+    }
+
+    /**
+     * This method recursively collects hashes of all versions of files contained in this Tree and it's children.
+     * Trees that were already visited are skipped, since their files were collected before.
+     * @param currentPath - path to the Tree from the root.
+     * @param visited - hashes of Trees that were already visited.
+     * @param versions - map from path of a file to list of hashes of it's versions in order they were found.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    void collectFiles(@NotNull Path currentPath, @NotNull Set<String> visited,
+                      @NotNull Map<Path, List<String>> versions) throws FileIOException, ClassNotFoundException {
+        if (!visited.add(hash)) {
+            return;
+        }
+        for (TreeEntry entry : entries) {
+            Path path = currentPath.resolve(entry.getName());
+            if (entry.isTree()) {
+                getSubtree(entry).collectFiles(path, visited, versions);
+            } else {
+                List<String> fileVersions = versions.computeIfAbsent(path, file -> new ArrayList<>());
+                if (!fileVersions.contains(entry.getHash())) {
+                    fileVersions.add(entry.getHash());
+                }
+            }
+        }
+    }
+
+    private void collectRemoved(@NotNull TreeEntry entry, @NotNull Path path, @NotNull List<Path> removed)
+            throws FileIOException, ClassNotFoundException {
+        if (entry.isTree()) {
+            Tree subtree = getSubtree(entry);
+            for (TreeEntry child : subtree.entries) {
+                subtree.collectRemoved(child, path.resolve(child.getName()), removed);
+            }
+        }
+        removed.add(path);
+    }
+
+    private Tree getSubtree(@NotNull TreeEntry entry) throws FileIOException, ClassNotFoundException {
+        return (Tree) store.read(entry.getHash());
+    }
+
+    /**
+     * Hashes entries encoded the same way as in payload: type tag, name prefixed with it's length and hash. Thus,
+     * different entries can't be hashed into the same content.
+     */
     private void updateHash() {
-        StringBuilder content = new StringBuilder();
-        content.append(directoryName);
-        children.forEach(content::append);
-        hash = DigestUtils.sha1Hex(content.toString().getBytes());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(content)) {
+            out.writeByte(ObjectCodec.getTag(TREE));
+            out.writeInt(entries.size());
+            for (TreeEntry entry : entries) {
+                out.writeByte(ObjectCodec.getTag(entry.getType()));
+                ObjectCodec.writeString(out, entry.getName());
+                ObjectCodec.writeHash(out, entry.getHash());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        hash = DigestUtils.sha1Hex(content.toByteArray());
     }
 }
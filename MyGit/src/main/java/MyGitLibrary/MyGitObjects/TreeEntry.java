@@ -0,0 +1,41 @@
+package MyGitLibrary.MyGitObjects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * This class represents an entry of a Tree: name of a file or a directory, type of the object and it's hash.
+ * Entries allow traversing trees without reading objects they refer to.
+ */
+class TreeEntry implements Comparable<TreeEntry> {
+
+    private String name;
+    private String type;
+    private String hash;
+
+    TreeEntry(@NotNull String name, @NotNull String type, @NotNull String hash) {
+        this.name = name;
+        this.type = type;
+        this.hash = hash;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    String getHash() {
+        return hash;
+    }
+
+    boolean isTree() {
+        return type.equals(MyGitObject.TREE);
+    }
+
+    @Override
+    public int compareTo(@NotNull TreeEntry that) {
+        return name.compareTo(that.name);
+    }
+}
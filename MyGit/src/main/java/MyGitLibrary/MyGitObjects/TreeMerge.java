@@ -0,0 +1,119 @@
+package MyGitLibrary.MyGitObjects;
+
+import MyGitLibrary.Exceptions.FileIOException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * This class merges trees of two commits using tree of their merge base. Entries are compared by hashes, so
+ * subtrees that weren't changed in one of the commits are taken from the other one without being read. Files
+ * changed in both commits are merged line by line.
+ *
+ * Only objects are written, the working tree isn't touched. Files that can't be merged cleanly are recorded as
+ * conflicts: text files contain both variants surrounded by conflict markers, otherwise the current version is kept.
+ * If a file was modified in one commit and deleted in the other, the modified version is kept, even if it's the
+ * merged one, so changes aren't lost.
+ */
+class TreeMerge {
+
+    private ObjectStore store;
+    private String oursLabel;
+    private String theirsLabel;
+    private List<Path> conflicts = new ArrayList<>();
+
+    /**
+     * @param store - store objects are read from and written to.
+     * @param oursLabel - name of the current branch written after conflict markers.
+     * @param theirsLabel - name of the merged branch written after conflict markers.
+     */
+    TreeMerge(@NotNull ObjectStore store, @NotNull String oursLabel, @NotNull String theirsLabel) {
+        this.store = store;
+        this.oursLabel = oursLabel;
+        this.theirsLabel = theirsLabel;
+    }
+
+    /**
+     * Merges trees.
+     * @param base - tree of the merge base or null if commits don't have common ancestors.
+     * @param ours - tree of the current commit.
+     * @param theirs - tree of the merged commit.
+     * @param currentPath - path to the trees from the root.
+     * @return - merged tree.
+     * @throws FileIOException - thrown if something went wrong during input/output to/from files.
+     * @throws ClassNotFoundException - normally it shouldn't be thrown.
+     */
+    @NotNull Tree merge(@Nullable Tree base, @NotNull Tree ours, @NotNull Tree theirs, @NotNull Path currentPath)
+            throws FileIOException, ClassNotFoundException {
+        Set<String> names = new TreeSet<>();
+        for (Tree tree : Arrays.asList(base, ours, theirs)) {
+            if (tree != null) {
+                tree.getEntries().forEach(entry -> names.add(entry.getName()));
+            }
+        }
+        List<TreeEntry> entries = new ArrayList<>();
+        for (String name : names) {
+            TreeEntry baseEntry = base == null ? null : base.getEntry(name);
+            TreeEntry oursEntry = ours.getEntry(name);
+            TreeEntry theirsEntry = theirs.getEntry(name);
+            TreeEntry entry = mergeEntries(baseEntry, oursEntry, theirsEntry, currentPath.resolve(name));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return new Tree(store, ours.getDirectoryName(), entries);
+    }
+
+    /**
+     * @return - paths to files that were changed in both commits and couldn't be merged cleanly.
+     */
+    @NotNull List<Path> getConflicts() {
+        return conflicts;
+    }
+
+    @Nullable private TreeEntry mergeEntries(@Nullable TreeEntry base, @Nullable TreeEntry ours,
+                                             @Nullable TreeEntry theirs, @NotNull Path path)
+            throws FileIOException, ClassNotFoundException {
+        if (isSame(ours, theirs) || isSame(base, theirs)) {
+            return ours;
+        }
+        if (isSame(base, ours)) {
+            return theirs;
+        }
+        if (ours != null && theirs != null && ours.isTree() && theirs.isTree()) {
+            Tree baseTree = base != null && base.isTree() ? (Tree) store.read(base.getHash()) : null;
+            Tree tree = merge(baseTree, (Tree) store.read(ours.getHash()), (Tree) store.read(theirs.getHash()), path);
+            return new TreeEntry(ours.getName(), MyGitObject.TREE, tree.getHash());
+        }
+        if (ours != null && theirs != null && !ours.isTree() && !theirs.isTree()) {
+            byte[] baseContent = base != null && !base.isTree() ? readContent(base) : new byte[0];
+            byte[] oursContent = readContent(ours);
+            byte[] theirsContent = readContent(theirs);
+            if (!LineMerge.isBinary(baseContent) && !LineMerge.isBinary(oursContent)
+                    && !LineMerge.isBinary(theirsContent)) {
+                LineMerge merge = LineMerge.merge(baseContent, oursContent, theirsContent, oursLabel, theirsLabel);
+                if (merge.getConflictCount() > 0) {
+                    conflicts.add(path);
+                }
+                Blob blob = new Blob(store, merge.getResult());
+                return new TreeEntry(ours.getName(), MyGitObject.BLOB, blob.getHash());
+            }
+        }
+        conflicts.add(path);
+        // on modify/delete conflicts the side that wasn't deleted is kept
+        return ours != null ? ours : theirs;
+    }
+
+    private static boolean isSame(@Nullable TreeEntry first, @Nullable TreeEntry second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+        return first.getHash().equals(second.getHash()) && first.isTree() == second.isTree();
+    }
+
+    @NotNull private byte[] readContent(@NotNull TreeEntry entry) throws FileIOException, ClassNotFoundException {
+        return ((Blob) store.read(entry.getHash())).getContent();
+    }
+}
@@ -1,18 +1,36 @@
 package MyGitLibrary.MyGitObjects;
 
+import Application.RepositoryGenerator;
 import MyGitLibrary.Constants;
 import MyGitLibrary.Exceptions.*;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.Level;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import static org.junit.Assert.*;
 
@@ -73,6 +91,21 @@ public class RepositoryManagerTest {
         repositoryManager.add(root.resolve("dir").resolve("file"));
     }
 
+    /**
+     * Writes a blob the way older versions of MyGit did, with hash depending on name of the file.
+     */
+    private Blob writeNamedBlob(ObjectStore store, byte[] content, String fileName) throws Exception {
+        byte[] named = Arrays.copyOf(content, content.length + fileName.getBytes().length);
+        System.arraycopy(fileName.getBytes(), 0, named, content.length, fileName.getBytes().length);
+        Blob blob = new Blob(getHash(named), fileName, content);
+        store.write(blob);
+        return blob;
+    }
+
+    private List<String> getMessages(LogObject log) {
+        return log.getCommits().stream().map(LogCommitObject::getMessage).collect(Collectors.toList());
+    }
+
     @Test(expected = RepositoryAlreadyExistsException.class)
     public void initRepositoryTwoTimes() throws Exception {
         RepositoryManager.initRepository(root);
@@ -104,10 +137,36 @@ public class RepositoryManagerTest {
         repositoryManager.add(Paths.get("file"));
     }
 
-    @Test(expected = IsDirectoryException.class)
+    @Test
     public void addDirectory() throws Exception {
         RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        Files.write(root.resolve("dir").resolve("second"), byte1);
         repositoryManager.add(root.resolve("dir"));
+        List<Path> staged = repositoryManager.status().getStaged();
+        assertEquals(Arrays.asList(root.resolve("dir").resolve("file"), root.resolve("dir").resolve("second")),
+                staged);
+        repositoryManager.add(root);
+        assertEquals(3, repositoryManager.status().getStaged().size());
+        assertEquals(3, Index.read(root).getStaged().size());
+    }
+
+    @Test
+    public void addFilesMatchingGlob() throws Exception {
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        Files.write(root.resolve("dir").resolve("file.txt"), byte1);
+        Files.write(root.resolve("file.txt"), byte2);
+        repositoryManager.add("**.txt");
+        assertEquals(Arrays.asList(root.resolve("dir").resolve("file.txt"), root.resolve("file.txt")),
+                repositoryManager.status().getStaged());
+        repositoryManager.commit("text files");
+        Files.delete(root.resolve("dir").resolve("file.txt"));
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("dir").resolve("file.txt")));
+    }
+
+    @Test(expected = FileDoesntExistException.class)
+    public void addGlobWithoutMatches() throws Exception {
+        RepositoryManager.initRepository(root).add("*.txt");
     }
 
     @Test
@@ -115,28 +174,20 @@ public class RepositoryManagerTest {
         RepositoryManager.initRepository(root);
         addCreatedFiles(RepositoryManager.getRepositoryManager(root));
 
-        List<String> lines = Files.readAllLines(root.resolve(Constants.index));
-        assertEquals(2, lines.size());
-        String[] line1 = lines.get(0).split(" ");
-        assertEquals(2, line1.length);
-        assertEquals(root.resolve("file").toString(), line1[0]);
-        String[] line2 = lines.get(1).split(" ");
-        assertEquals(2, line2.length);
-        assertEquals(root.resolve("dir").resolve("file").toString(), line2[0]);
+        List<PairPathString> staged = Index.read(root).getStaged();
+        assertEquals(2, staged.size());
+        assertEquals(root.resolve("dir").resolve("file"), staged.get(0).getPath());
+        assertEquals(root.resolve("file"), staged.get(1).getPath());
     }
 
     @Test
     public void addSeveralFilesAndCommit() throws Exception {
         RepositoryManager.initRepository(root);
         addCreatedFiles(RepositoryManager.getRepositoryManager(root));
-        List<String> lines = Files.readAllLines(root.resolve(Constants.index));
-        assertEquals(2, lines.size());
-        String[] line1 = lines.get(0).split(" ");
-        assertEquals(2, line1.length);
-        assertEquals(root.resolve("file").toString(), line1[0]);
-        String[] line2 = lines.get(1).split(" ");
-        assertEquals(2, line2.length);
-        assertEquals(root.resolve("dir").resolve("file").toString(), line2[0]);
+        List<PairPathString> staged = Index.read(root).getStaged();
+        assertEquals(2, staged.size());
+        assertEquals(root.resolve("dir").resolve("file"), staged.get(0).getPath());
+        assertEquals(root.resolve("file"), staged.get(1).getPath());
 
         RepositoryManager.getRepositoryManager(root).commit("first commit");
     }
@@ -193,9 +244,8 @@ public class RepositoryManagerTest {
         addCreatedFiles(RepositoryManager.getRepositoryManager(root));
         RepositoryManager.getRepositoryManager(root).commit("commit in second branch");
         RepositoryManager.getRepositoryManager(root).checkout("master");
-        Files.delete(root.resolve("file"));
-        Files.delete(root.resolve("dir").resolve("file"));
-        Files.delete(root.resolve("dir"));
+        assertFalse(Files.exists(root.resolve("file")));
+        assertFalse(Files.exists(root.resolve("dir")));
         RepositoryManager.getRepositoryManager(root).checkout("second");
         assertTrue(Files.exists(root.resolve("file")));
         assertTrue(Files.exists(root.resolve("dir").resolve("file")));
@@ -210,9 +260,8 @@ public class RepositoryManagerTest {
         addCreatedFiles(RepositoryManager.getRepositoryManager(root));
         RepositoryManager.getRepositoryManager(root).commit("commit in second branch");
         RepositoryManager.getRepositoryManager(root).checkout("master");
-        Files.delete(root.resolve("file"));
-        Files.delete(root.resolve("dir").resolve("file"));
-        Files.delete(root.resolve("dir"));
+        assertFalse(Files.exists(root.resolve("file")));
+        assertFalse(Files.exists(root.resolve("dir")));
         RepositoryManager.getRepositoryManager(root).merge("second");
         assertTrue(Files.exists(root.resolve("file")));
         assertTrue(Files.exists(root.resolve("dir").resolve("file")));
@@ -226,4 +275,1001 @@ public class RepositoryManagerTest {
         assertTrue(Files.exists(root.resolve("file")));
         assertFalse(Files.exists(root.resolve("dir").resolve("file")));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void objectsAreWrittenInBinaryFormat() throws Exception {
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        addCreatedFiles(repositoryManager);
+        repositoryManager.commit("first commit");
+        List<Path> objects = Files.list(root.resolve(Constants.objectsDirectory)).collect(Collectors.toList());
+        assertFalse(objects.isEmpty());
+        for (Path object : objects) {
+            ObjectHeader header = new ObjectStore(root).readHeader(object.getFileName().toString());
+            assertEquals(ObjectCodec.VERSION, header.getVersion());
+            try (InputStream inputStream = new InflaterInputStream(Files.newInputStream(object))) {
+                assertEquals(ObjectCodec.HEADER_SIZE + header.getSize(), IOUtils.toByteArray(inputStream).length);
+            }
+        }
+    }
+
+    @Test
+    public void blobsAreCompressed() throws Exception {
+        byte[] content = new byte[100000];
+        Files.write(root.resolve("file"), content);
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        repositoryManager.add(root.resolve("file"));
+        String hash = new Blob(new ObjectStore(root), content).getHash();
+        assertTrue(Files.size(root.resolve(Constants.objectsDirectory).resolve(hash)) < content.length / 10);
+
+        repositoryManager.commit("first commit");
+        Files.delete(root.resolve("file"));
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        assertArrayEquals(content, Files.readAllBytes(root.resolve("file")));
+    }
+
+    @Test
+    public void commitSurvivesEncodingAndDecoding() throws Exception {
+        RepositoryManager.initRepository(root);
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        RepositoryManager.getRepositoryManager(root).commit("first commit");
+        LogCommitObject last = RepositoryManager.getRepositoryManager(root).log().getCommits().get(1);
+        ObjectStore store = new ObjectStore(root);
+        Commit commit = (Commit) store.read(last.getHash());
+        assertEquals("first commit", commit.getMessage());
+        assertEquals(last.getDate(), commit.getDate().toString());
+        assertEquals(MyGitObject.TREE, store.readHeader(commit.getTree().getHash()).getType());
+    }
+
+    @Test
+    public void gcPacksObjectsAndKeepsThemReadable() throws Exception {
+        RepositoryManager.initRepository(root);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("line number ").append(i).append("\n");
+        }
+        for (int i = 0; i < 5; i++) {
+            content.append("change ").append(i).append("\n");
+            Files.write(root.resolve("file"), content.toString().getBytes());
+            RepositoryManager.getRepositoryManager(root).add(root.resolve("file"));
+            RepositoryManager.getRepositoryManager(root).commit("commit " + i);
+        }
+        long looseSize = Files.list(root.resolve(Constants.objectsDirectory))
+                .mapToLong(path -> path.toFile().length()).sum();
+        RepositoryManager.getRepositoryManager(root).gc();
+
+        assertEquals(0, Files.list(root.resolve(Constants.objectsDirectory)).count());
+        List<Path> packs = Files.list(root.resolve(Constants.packsDirectory)).collect(Collectors.toList());
+        assertEquals(2, packs.size());
+        long packSize = packs.stream().mapToLong(path -> path.toFile().length()).sum();
+        assertTrue(packSize < looseSize / 2);
+
+        assertEquals(6, RepositoryManager.getRepositoryManager(root).log().getCommits().size());
+        Files.delete(root.resolve("file"));
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        assertEquals(content.toString(), new String(Files.readAllBytes(root.resolve("file"))));
+
+        Files.write(root.resolve("dir").resolve("file"), byte2);
+        RepositoryManager.getRepositoryManager(root).add(root.resolve("dir").resolve("file"));
+        RepositoryManager.getRepositoryManager(root).commit("after gc");
+        RepositoryManager.getRepositoryManager(root).gc();
+        assertEquals(7, RepositoryManager.getRepositoryManager(root).log().getCommits().size());
+    }
+
+    @Test
+    public void logWalksMergeHistoryOnce() throws Exception {
+        RepositoryManager.initRepository(root);
+        for (int i = 0; i < 20; i++) {
+            RepositoryManager.getRepositoryManager(root).createBranch("branch" + i);
+            RepositoryManager.getRepositoryManager(root).checkout("branch" + i);
+            Files.write(root.resolve("branch"), ("version " + i).getBytes());
+            RepositoryManager.getRepositoryManager(root).add(root.resolve("branch"));
+            RepositoryManager.getRepositoryManager(root).commit("commit in branch " + i);
+            RepositoryManager.getRepositoryManager(root).checkout("master");
+            Files.write(root.resolve("file"), ("version " + i).getBytes());
+            RepositoryManager.getRepositoryManager(root).add(root.resolve("file"));
+            RepositoryManager.getRepositoryManager(root).commit("commit " + i);
+            assertNotNull(RepositoryManager.getRepositoryManager(root).merge("branch" + i).getCommitHash());
+        }
+        List<LogCommitObject> commits = RepositoryManager.getRepositoryManager(root).log().getCommits();
+        assertEquals(61, commits.size());
+        assertEquals(61, commits.stream().map(LogCommitObject::getHash).distinct().count());
+
+        CommitGraph graph = CommitGraph.load(root);
+        assertNotNull(graph);
+        assertEquals(61, graph.size());
+        String head = commits.get(commits.size() - 1).getHash();
+        CommitNode node = graph.getNode(head);
+        assertNotNull(node);
+        assertEquals(((Commit) new ObjectStore(root).read(head)).getParents(), node.getParents());
+        assertEquals(41, node.getGeneration());
+        assertNull(graph.getNode(DigestUtils.sha1Hex("missing")));
+        assertEquals(commits.size(), RepositoryManager.getRepositoryManager(root).log().getCommits().size());
+    }
+
+    @Test
+    public void logReturnsRequestedPage() throws Exception {
+        RepositoryManager.initRepository(root);
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(5);
+            Files.write(root.resolve("file"), ("version " + i).getBytes());
+            RepositoryManager.getRepositoryManager(root).add(root.resolve("file"));
+            RepositoryManager.getRepositoryManager(root).commit("commit " + i);
+        }
+        RepositoryManager.getRepositoryManager(root).gc();
+        List<String> messages = getMessages(RepositoryManager.getRepositoryManager(root).log());
+        assertEquals(11, messages.size());
+
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        ObjectCache cache = repositoryManager.getObjectCache();
+        long reads = cache.getMissCount() + cache.getHitCount();
+        assertEquals(messages.subList(8, 11), getMessages(repositoryManager.log(new LogOptions().setLimit(3))));
+        assertTrue(cache.getMissCount() + cache.getHitCount() - reads < 10);
+
+        assertEquals(messages.subList(6, 9), getMessages(RepositoryManager.getRepositoryManager(root)
+                .log(new LogOptions().setSkip(2).setLimit(3))));
+
+        LogIterator iterator = RepositoryManager.getRepositoryManager(root).logIterator(new LogOptions());
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            assertTrue(iterator.hasNext());
+            assertEquals(messages.get(i), iterator.next().getMessage());
+        }
+        assertFalse(iterator.hasNext());
+
+        ObjectStore store = new ObjectStore(root);
+        LogObject log = RepositoryManager.getRepositoryManager(root).log();
+        Date since = ((Commit) store.read(log.getCommits().get(3).getHash())).getDate();
+        Date until = ((Commit) store.read(log.getCommits().get(7).getHash())).getDate();
+        assertEquals(messages.subList(3, 8), getMessages(RepositoryManager.getRepositoryManager(root)
+                .log(new LogOptions().setSince(since).setUntil(until))));
+    }
+
+    @Test
+    public void checkoutSkipsUnchangedFiles() throws Exception {
+        RepositoryManager.initRepository(root);
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 3600 * 1000);
+        Files.setLastModifiedTime(root.resolve("file"), past);
+        Files.setLastModifiedTime(root.resolve("dir").resolve("file"), past);
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        RepositoryManager.getRepositoryManager(root).commit("first commit");
+        RepositoryManager.getRepositoryManager(root).createBranch("second");
+
+        Files.write(root.resolve("dir").resolve("file"), byte1);
+        RepositoryManager.getRepositoryManager(root).checkout("second");
+        assertEquals(past, Files.getLastModifiedTime(root.resolve("file")));
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("file")));
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("dir").resolve("file")));
+
+        Files.delete(root.resolve("file"));
+        Files.delete(root.resolve("dir").resolve("file"));
+        Files.delete(root.resolve("dir"));
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("file")));
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("dir").resolve("file")));
+    }
+
+    @Test
+    public void checkoutTouchesOnlyChangedFiles() throws Exception {
+        RepositoryManager.initRepository(root);
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 3600 * 1000);
+        Files.setLastModifiedTime(root.resolve("dir").resolve("file"), past);
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        RepositoryManager.getRepositoryManager(root).commit("first commit");
+        RepositoryManager.getRepositoryManager(root).createBranch("second");
+        RepositoryManager.getRepositoryManager(root).checkout("second");
+
+        Path deepDirectory = Files.createDirectories(root.resolve("dir").resolve("deep"));
+        Files.write(deepDirectory.resolve("file"), byte1);
+        Files.write(root.resolve("other"), byte1);
+        Files.write(root.resolve("file"), byte2);
+        RepositoryManager.getRepositoryManager(root).add(Arrays.asList(deepDirectory.resolve("file"),
+                root.resolve("other"), root.resolve("file")));
+        RepositoryManager.getRepositoryManager(root).commit("commit in second branch");
+        Files.write(deepDirectory.resolve("unversioned"), byte2);
+
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("file")));
+        assertFalse(Files.exists(root.resolve("other")));
+        assertFalse(Files.exists(deepDirectory.resolve("file")));
+        assertTrue(Files.exists(deepDirectory.resolve("unversioned")));
+        assertEquals(past, Files.getLastModifiedTime(root.resolve("dir").resolve("file")));
+        StatusObject status = RepositoryManager.getRepositoryManager(root).status();
+        assertEquals(2, status.getUnmodified().size());
+        assertEquals(Collections.singletonList(deepDirectory.resolve("unversioned")), status.getUnversioned());
+
+        Files.delete(deepDirectory.resolve("unversioned"));
+        RepositoryManager.getRepositoryManager(root).checkout("second");
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("file")));
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("other")));
+        assertArrayEquals(byte1, Files.readAllBytes(deepDirectory.resolve("file")));
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        assertFalse(Files.exists(deepDirectory));
+    }
+
+    @Test
+    public void mergeTakesChangesFromBothBranches() throws Exception {
+        RepositoryManager.initRepository(root);
+        Files.write(root.resolve("file"), "first\nsecond\nthird\nfourth\nfifth\n".getBytes());
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        RepositoryManager.getRepositoryManager(root).commit("base commit");
+        RepositoryManager.getRepositoryManager(root).createBranch("second");
+        RepositoryManager.getRepositoryManager(root).checkout("second");
+        Files.write(root.resolve("file"), "first\nsecond\nthird\nfourth\nchanged in second\n".getBytes());
+        Files.write(root.resolve("other"), byte1);
+        RepositoryManager.getRepositoryManager(root).add(Arrays.asList(root.resolve("file"), root.resolve("other")));
+        RepositoryManager.getRepositoryManager(root).commit("commit in second branch");
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        Files.write(root.resolve("file"), "changed in master\nsecond\nthird\nfourth\nfifth\n".getBytes());
+        Files.write(root.resolve("dir").resolve("file"), byte1);
+        RepositoryManager.getRepositoryManager(root).add(root);
+        RepositoryManager.getRepositoryManager(root).commit("commit in master");
+
+        MergeObject merge = RepositoryManager.getRepositoryManager(root).merge("second");
+        assertTrue(merge.getConflicts().isEmpty());
+        assertEquals("changed in master\nsecond\nthird\nfourth\nchanged in second\n",
+                new String(Files.readAllBytes(root.resolve("file"))));
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("other")));
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("dir").resolve("file")));
+        Commit commit = (Commit) new ObjectStore(root).read(merge.getCommitHash());
+        assertEquals(2, commit.getParents().size());
+        StatusObject status = RepositoryManager.getRepositoryManager(root).status();
+        assertEquals(3, status.getUnmodified().size());
+        assertTrue(RepositoryManager.getRepositoryManager(root).merge("second").isUpToDate());
+    }
+
+    @Test
+    public void mergeConflictIsFinishedByCommit() throws Exception {
+        RepositoryManager.initRepository(root);
+        Files.write(root.resolve("file"), "first\nsecond\n".getBytes());
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        RepositoryManager.getRepositoryManager(root).commit("base commit");
+        RepositoryManager.getRepositoryManager(root).createBranch("second");
+        RepositoryManager.getRepositoryManager(root).checkout("second");
+        Files.write(root.resolve("file"), "first\nsecond branch\n".getBytes());
+        RepositoryManager.getRepositoryManager(root).add(root.resolve("file"));
+        RepositoryManager.getRepositoryManager(root).commit("commit in second branch");
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        Files.write(root.resolve("file"), "first\nmaster branch\n".getBytes());
+        RepositoryManager.getRepositoryManager(root).add(root.resolve("file"));
+        RepositoryManager.getRepositoryManager(root).commit("commit in master");
+        int commits = RepositoryManager.getRepositoryManager(root).log().getCommits().size();
+
+        MergeObject merge = RepositoryManager.getRepositoryManager(root).merge("second");
+        assertNull(merge.getCommitHash());
+        assertEquals(Collections.singletonList(root.resolve("file")), merge.getConflicts());
+        assertEquals("first\n<<<<<<< master\nmaster branch\n=======\nsecond branch\n>>>>>>> second\n",
+                new String(Files.readAllBytes(root.resolve("file"))));
+        assertEquals(commits, RepositoryManager.getRepositoryManager(root).log().getCommits().size());
+
+        Files.write(root.resolve("file"), "first\nboth branches\n".getBytes());
+        RepositoryManager.getRepositoryManager(root).add(root.resolve("file"));
+        RepositoryManager.getRepositoryManager(root).commit("merge commit");
+        assertFalse(Files.exists(root.resolve(Constants.mergeHead)));
+        List<LogCommitObject> log = RepositoryManager.getRepositoryManager(root).log().getCommits();
+        assertEquals(commits + 2, log.size());
+        Commit commit = (Commit) new ObjectStore(root).read(log.get(log.size() - 1).getHash());
+        assertEquals(2, commit.getParents().size());
+        assertTrue(RepositoryManager.getRepositoryManager(root).merge("second").isUpToDate());
+    }
+
+    @Test
+    public void lineDiffFindsLongestCommonSubsequence() throws Exception {
+        Random random = new Random(42);
+        for (int test = 0; test < 200; test++) {
+            List<String> first = new ArrayList<>();
+            List<String> second = new ArrayList<>();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                first.add(random.nextInt(5) + "\n");
+            }
+            for (int i = random.nextInt(40); i > 0; i--) {
+                second.add(random.nextInt(5) + "\n");
+            }
+            int[] matches = LineDiff.match(first, second);
+            int matched = 0;
+            int last = -1;
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] != -1) {
+                    assertTrue(matches[i] > last);
+                    assertEquals(first.get(i), second.get(matches[i]));
+                    last = matches[i];
+                    matched++;
+                }
+            }
+            int[][] lengths = new int[first.size() + 1][second.size() + 1];
+            for (int i = first.size() - 1; i >= 0; i--) {
+                for (int j = second.size() - 1; j >= 0; j--) {
+                    lengths[i][j] = first.get(i).equals(second.get(j)) ? lengths[i + 1][j + 1] + 1
+                            : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+                }
+            }
+            assertEquals(lengths[0][0], matched);
+        }
+    }
+
+    @Test
+    public void lineDiffSplitsDistantChangesIntoHunks() throws Exception {
+        List<String> first = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            first.add(i + "\n");
+        }
+        List<String> second = new ArrayList<>(first);
+        second.set(1, "one\n");
+        second.remove(15);
+        second.add("20");
+        List<DiffHunk> hunks = new ArrayList<>();
+        LineDiff.forEachHunk(first, second, LineDiff.DEFAULT_CONTEXT, hunks::add);
+        assertEquals(2, hunks.size());
+        assertEquals("@@ -1,5 +1,5 @@", hunks.get(0).getHeader());
+        assertEquals(Arrays.asList(" 0\n", "-1\n", "+one\n", " 2\n", " 3\n", " 4\n"), hunks.get(0).getLines());
+        assertEquals("@@ -13,8 +13,8 @@", hunks.get(1).getHeader());
+        assertEquals("-15\n", hunks.get(1).getLines().get(3));
+        assertEquals("+20", hunks.get(1).getLines().get(8));
+    }
+
+    @Test
+    public void diffComparesWorkingTreeIndexAndCommits() throws Exception {
+        Files.write(root.resolve("file"), "a\nb\nc\n".getBytes());
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        repositoryManager.add(Arrays.asList(root.resolve("file"), root.resolve("dir")));
+        repositoryManager.commit("first");
+        repositoryManager.createBranch("first");
+        assertTrue(repositoryManager.diff().isEmpty());
+
+        Files.write(root.resolve("file"), "a\nB\nc\n".getBytes());
+        List<FileDiff> diffs = repositoryManager.diff();
+        assertEquals(1, diffs.size());
+        assertEquals(root.resolve("file"), diffs.get(0).getPath());
+        assertEquals(Arrays.asList(" a\n", "-b\n", "+B\n", " c\n"), diffs.get(0).getHunks().get(0).getLines());
+        assertTrue(repositoryManager.diffStaged().isEmpty());
+
+        repositoryManager.add(root.resolve("file"));
+        Files.delete(root.resolve("dir").resolve("file"));
+        diffs = repositoryManager.diff();
+        assertEquals(1, diffs.size());
+        assertNull(diffs.get(0).getNewHash());
+        assertEquals(Collections.singletonList("-" + new String(byte2)),
+                diffs.get(0).getHunks().get(0).getLines());
+        assertEquals(1, repositoryManager.diffStaged().size());
+
+        repositoryManager.commit("second");
+        repositoryManager = RepositoryManager.getRepositoryManager(root);
+        diffs = repositoryManager.diff("first", "master");
+        assertEquals(1, diffs.size());
+        assertEquals(Arrays.asList(" a\n", "-b\n", "+B\n", " c\n"), diffs.get(0).getHunks().get(0).getLines());
+        assertTrue(repositoryManager.diff("master", "master").isEmpty());
+    }
+
+    @Test
+    public void deltaRestoresTarget() throws Exception {
+        byte[] base = new byte[1000];
+        for (int i = 0; i < base.length; i++) {
+            base[i] = (byte) (i * 7);
+        }
+        byte[] target = new byte[1100];
+        System.arraycopy(base, 0, target, 0, 500);
+        System.arraycopy(base, 400, target, 600, 500);
+        byte[] delta = Delta.create(base, target);
+        assertTrue(delta.length < target.length / 2);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertArrayEquals(new byte[0], Delta.apply(base, Delta.create(base, new byte[0])));
+    }
+
+    @Test
+    public void blobIsHashedAndSavedInOnePass() throws Exception {
+        RepositoryManager.initRepository(root);
+        byte[] content = new byte[200 * 1024 + 7];
+        new Random(7).nextBytes(content);
+        Path path = root.resolve("large");
+        Files.write(path, content);
+        ObjectStore store = new ObjectStore(root);
+        Blob blob = Blob.fromFile(store, path);
+        assertFalse(blob.isContentLoaded());
+        assertEquals(Blob.hashFile(path), blob.getHash());
+        assertEquals(getHash(content), blob.getHash());
+        assertArrayEquals(content, ((Blob) new ObjectStore(root).read(blob.getHash())).getContent());
+        assertEquals(Collections.emptyList(), Files.list(root.resolve(Constants.objectsDirectory))
+                .filter(file -> file.toString().endsWith(ObjectStore.TEMPORARY_SUFFIX))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void equalFilesAreStoredOnce() throws Exception {
+        Files.write(root.resolve("dir").resolve("copy"), byte1);
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        repositoryManager.add(root);
+        repositoryManager.commit("copy");
+        StorageReport report = repositoryManager.storageReport();
+        assertEquals(2, report.getBlobCount());
+        assertEquals(0, report.getDuplicateSize());
+
+        ObjectStore store = new ObjectStore(root);
+        writeNamedBlob(store, byte1, "old");
+        Blob named = writeNamedBlob(store, byte2, "other");
+        report = repositoryManager.storageReport();
+        assertEquals(4, report.getBlobCount());
+        assertEquals(2, report.getUniqueContentCount());
+        assertEquals(2, report.getNamedBlobCount());
+        assertEquals(40, report.getTotalSize());
+        assertEquals(20, report.getDuplicateSize());
+
+        Files.write(root.resolve("other"), byte2);
+        assertTrue(Index.read(root).hasContent(root.resolve("other"),
+                Files.readAttributes(root.resolve("other"), BasicFileAttributes.class), named.getHash(), store));
+        assertFalse(Index.read(root).hasContent(root.resolve("file"),
+                Files.readAttributes(root.resolve("file"), BasicFileAttributes.class), named.getHash(), store));
+    }
+
+    @Test
+    public void objectsAreReadFromCache() throws Exception {
+        RepositoryManager.initRepository(root);
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        RepositoryManager.getRepositoryManager(root).commit("first commit");
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        repositoryManager.status();
+        ObjectCache cache = repositoryManager.getObjectCache();
+        long misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+        assertTrue(misses > 0);
+        repositoryManager.status();
+        assertEquals(misses, cache.getMissCount());
+        assertTrue(cache.getHitCount() > hits);
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsedObjects() throws Exception {
+        RepositoryManager.initRepository(root);
+        ObjectStore store = new ObjectStore(root);
+        String blob = new Blob(store, byte1).getHash();
+        Tree first = new Tree(store, "one", new ArrayList<>(Collections.singletonList(
+                new TreeEntry("one", MyGitObject.BLOB, blob))));
+        Tree second = new Tree(store, "two", new ArrayList<>(Collections.singletonList(
+                new TreeEntry("two", MyGitObject.BLOB, blob))));
+        Tree third = new Tree(store, "six", new ArrayList<>(Collections.singletonList(
+                new TreeEntry("six", MyGitObject.BLOB, blob))));
+        long size = ObjectCache.estimateSize(first);
+        ObjectCache cache = new ObjectCache(2 * size);
+        cache.put(first);
+        cache.put(second);
+        assertNotNull(cache.get(first.getHash()));
+        cache.put(third);
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(second.getHash()));
+        assertNotNull(cache.get(first.getHash()));
+        assertNotNull(cache.get(third.getHash()));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertTrue(cache.getSize() <= cache.getCapacity());
+    }
+
+    @Test
+    public void statusDoesntReadFilesWithUnchangedStat() throws Exception {
+        RepositoryManager.initRepository(root);
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        RepositoryManager.getRepositoryManager(root).commit("first commit");
+        Path file = root.resolve("file");
+        Files.write(file, byte2);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+        StatusObject status = RepositoryManager.getRepositoryManager(root).status();
+        assertEquals(Collections.singletonList(file), status.getModified());
+
+        Files.write(file, byte1);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+        status = RepositoryManager.getRepositoryManager(root).status();
+        assertEquals(Collections.singletonList(file), status.getModified());
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(2000));
+        status = RepositoryManager.getRepositoryManager(root).status();
+        assertTrue(status.getModified().isEmpty());
+        assertEquals(2, status.getUnmodified().size());
+        assertTrue(status.getUnversioned().isEmpty());
+    }
+
+    @Test
+    public void statusRehashesFilesModifiedAfterIndex() throws Exception {
+        RepositoryManager.initRepository(root);
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        RepositoryManager.getRepositoryManager(root).commit("first commit");
+        Path file = root.resolve("file");
+        FileTime future = FileTime.fromMillis(System.currentTimeMillis() + 100000);
+        Files.setLastModifiedTime(file, future);
+        RepositoryManager.getRepositoryManager(root).status();
+        Files.write(file, byte2);
+        Files.setLastModifiedTime(file, future);
+        StatusObject status = RepositoryManager.getRepositoryManager(root).status();
+        assertEquals(Collections.singletonList(file), status.getModified());
+    }
+
+    @Test
+    public void addSeveralFilesAtOnce() throws Exception {
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        try {
+            repositoryManager.add(Arrays.asList(root.resolve("file"), root.resolve("fil")));
+            fail();
+        } catch (FileDoesntExistException e) {
+            assertTrue(Index.read(root).getStaged().isEmpty());
+        }
+        repositoryManager.add(Arrays.asList(root.resolve("file"), root.resolve("dir").resolve("file")));
+        assertEquals(2, Index.read(root).getStaged().size());
+        assertEquals(2, repositoryManager.status().getStaged().size());
+        repositoryManager.reset(root.resolve("file"));
+        assertEquals(Collections.singletonList(root.resolve("dir").resolve("file")),
+                repositoryManager.status().getStaged());
+        assertEquals(1, Index.read(root).getStaged().size());
+        assertFalse(Files.exists(root.resolve(Constants.index + ".tmp")));
+    }
+
+    @Test
+    public void commitWritesEveryChangedTreeOnce() throws Exception {
+        RepositoryManager repositoryManager = RepositoryManager.initRepository(root);
+        Path deepDirectory = Files.createDirectories(root.resolve("dir").resolve("deep"));
+        Files.write(deepDirectory.resolve("first"), byte1);
+        Files.write(deepDirectory.resolve("second"), byte2);
+        repositoryManager.add(root);
+        long objects = Files.list(root.resolve(Constants.objectsDirectory)).count();
+        repositoryManager.commit("first commit");
+        assertEquals(objects + 4, Files.list(root.resolve(Constants.objectsDirectory)).count());
+
+        Files.write(deepDirectory.resolve("first"), byte2);
+        repositoryManager = RepositoryManager.getRepositoryManager(root);
+        repositoryManager.add(deepDirectory.resolve("first"));
+        objects = Files.list(root.resolve(Constants.objectsDirectory)).count();
+        repositoryManager.commit("second commit");
+        assertEquals(objects + 4, Files.list(root.resolve(Constants.objectsDirectory)).count());
+
+        Files.delete(deepDirectory.resolve("first"));
+        Files.delete(root.resolve("file"));
+        RepositoryManager.getRepositoryManager(root).checkout("master");
+        assertArrayEquals(byte2, Files.readAllBytes(deepDirectory.resolve("first")));
+        assertArrayEquals(byte2, Files.readAllBytes(deepDirectory.resolve("second")));
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("file")));
+        StatusObject status = RepositoryManager.getRepositoryManager(root).status();
+        assertEquals(4, status.getUnmodified().size());
+        assertTrue(status.getModified().isEmpty());
+    }
+
+    @Test
+    public void treesHaveSortedEntries() throws Exception {
+        RepositoryManager.initRepository(root);
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        Files.write(root.resolve("another"), byte2);
+        RepositoryManager.getRepositoryManager(root).add(root.resolve("another"));
+        RepositoryManager.getRepositoryManager(root).commit("first commit");
+        String head = Files.readAllLines(root.resolve(Constants.head)).get(1);
+        Tree tree = ((Commit) new ObjectStore(root).read(head)).getTree();
+        List<String> names = tree.getEntries().stream().map(TreeEntry::getName).collect(Collectors.toList());
+        assertEquals(Arrays.asList("another", "dir", "file"), names);
+        assertTrue(tree.getEntry("dir").isTree());
+        assertEquals(MyGitObject.BLOB, tree.getEntry("file").getType());
+        assertNull(tree.getEntry("missing"));
+    }
+
+    @Test
+    public void treesOfFirstVersionAreReadable() throws Exception {
+        RepositoryManager.initRepository(root);
+        ObjectStore store = new ObjectStore(root);
+        Blob blob = writeNamedBlob(store, byte1, "file");
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        ObjectCodec.writeString(payloadOut, "dir");
+        payloadOut.writeInt(1);
+        ObjectCodec.writeHash(payloadOut, blob.getHash());
+        String hash = getHash(payload.toByteArray());
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                Files.newOutputStream(root.resolve(Constants.objectsDirectory).resolve(hash))))) {
+            out.write(ObjectCodec.MAGIC);
+            out.writeByte(Tree.VERSION_WITHOUT_ENTRIES);
+            out.writeByte(ObjectCodec.TREE_TAG);
+            out.writeLong(payload.size());
+            payload.writeTo(out);
+        }
+        Tree tree = (Tree) new ObjectStore(root).read(hash);
+        assertEquals("dir", tree.getDirectoryName());
+        assertEquals(1, tree.getEntries().size());
+        assertEquals("file", tree.getEntries().get(0).getName());
+        assertEquals(blob.getHash(), tree.getEntry("file").getHash());
+    }
+
+    @Test
+    public void concurrentCommitsAreNotLost() throws Exception {
+        RepositoryManager.initRepository(root);
+        addCreatedFiles(RepositoryManager.getRepositoryManager(root));
+        int threadCount = 4;
+        int commitsPerThread = 5;
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            int number = i;
+            threads.add(new Thread(() -> {
+                try {
+                    RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+                    for (int j = 0; j < commitsPerThread; j++) {
+                        Path file = root.resolve("thread" + number + "_" + j);
+                        Files.write(file, file.getFileName().toString().getBytes());
+                        repositoryManager.add(file);
+                        repositoryManager.commit("commit " + number + " " + j);
+                        repositoryManager.status();
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), errors);
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        assertEquals(threadCount * commitsPerThread + 1, repositoryManager.log().getCommits().size());
+        StatusObject status = repositoryManager.status();
+        assertTrue(status.getStaged().isEmpty());
+        assertTrue(status.getModified().isEmpty());
+        assertTrue(status.getUnversioned().isEmpty());
+        assertEquals(threadCount * commitsPerThread + 2, status.getUnmodified().size());
+    }
+
+    @Test
+    public void branchesCreatedByAnotherManagerAreVisible() throws Exception {
+        RepositoryManager.initRepository(root);
+        RepositoryManager first = RepositoryManager.getRepositoryManager(root);
+        RepositoryManager second = RepositoryManager.getRepositoryManager(root);
+        addCreatedFiles(first);
+        first.commit("first commit");
+        first.createBranch("feature");
+        Files.write(root.resolve("file"), byte2);
+        first.add(root.resolve("file"));
+        first.commit("second commit");
+        second.checkout("feature");
+        assertEquals("feature", second.getCurrentBranchesName());
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("file")));
+        assertTrue(second.merge("master").getConflicts().isEmpty());
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("file")));
+    }
+
+    @Test
+    public void logLevelIsConfigurable() throws Exception {
+        String previous = System.getProperty(LoggerBuilder.LEVEL_PROPERTY);
+        try {
+            System.setProperty(LoggerBuilder.LEVEL_PROPERTY, "off");
+            assertEquals(Level.OFF, LoggerBuilder.getLevel());
+            System.setProperty(LoggerBuilder.LEVEL_PROPERTY, "unknown");
+            assertEquals(Level.TRACE, LoggerBuilder.getLevel());
+        } finally {
+            if (previous == null) {
+                System.clearProperty(LoggerBuilder.LEVEL_PROPERTY);
+            } else {
+                System.setProperty(LoggerBuilder.LEVEL_PROPERTY, previous);
+            }
+        }
+    }
+
+    @Test
+    public void metricsAreCollectedForOperations() throws Exception {
+        RepositoryManager.initRepository(root);
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        repositoryManager.resetMetrics();
+        addCreatedFiles(repositoryManager);
+        repositoryManager.commit("first commit");
+        MetricsReport report = repositoryManager.metrics();
+        assertEquals(Long.valueOf(2), report.getCounters().get(Metrics.FILES_HASHED));
+        assertEquals(Long.valueOf(byte1.length + byte2.length), report.getCounters().get(Metrics.BYTES_HASHED));
+        assertTrue(report.getCounters().get(Metrics.OBJECTS_WRITTEN) >= 4);
+        assertTrue(report.getCounters().get(Metrics.METADATA_FILES_REPLACED) >= 4);
+        assertEquals(1, report.getTimers().get("operation.commit").getCount());
+        assertEquals(1, report.getTimers().get("commit.buildTree").getCount());
+        assertTrue(report.getTimers().get("index.write").getCount() >= 2);
+        assertTrue(report.toJson().contains("\"operation.commit\":{\"count\":1,"));
+        repositoryManager.resetMetrics();
+        assertEquals(0, repositoryManager.metrics().getTimers().get("operation.commit").getCount());
+    }
+
+    @Test
+    public void generatedRepositoriesAreDeterministic() throws Exception {
+        List<List<String>> contents = new ArrayList<>();
+        for (String name : Arrays.asList("first", "second")) {
+            Path directory = folder.newFolder(name).toPath();
+            RepositoryManager repositoryManager = new RepositoryGenerator().setSeed(42).setFileCount(30)
+                    .setFanOut(4).setFileSize(200).setCommitCount(20).setBranchCount(2).setMergeFrequency(0.5)
+                    .setChangedFiles(3).generate(directory);
+            StatusObject status = repositoryManager.status();
+            assertTrue(status.getStaged().isEmpty());
+            assertTrue(status.getModified().isEmpty());
+            assertTrue(status.getUnversioned().isEmpty());
+            List<String> content = new ArrayList<>();
+            for (Path file : status.getUnmodified().stream().sorted().collect(Collectors.toList())) {
+                assertTrue(directory.relativize(file).getNameCount() <= 4);
+                content.add(directory.relativize(file) + " " + getHash(file));
+            }
+            content.add(String.valueOf(repositoryManager.log().getCommits().size()));
+            contents.add(content);
+        }
+        assertEquals(contents.get(0), contents.get(1));
+    }
+
+    @Test
+    public void historyIsReplayedFromSnapshots() throws Exception {
+        Path snapshots = folder.newFolder("snapshots").toPath();
+        Files.createDirectories(snapshots.resolve("1").resolve("dir"));
+        Files.write(snapshots.resolve("1").resolve("file"), byte1);
+        Files.write(snapshots.resolve("1").resolve("dir").resolve("file"), byte1);
+        Files.createDirectories(snapshots.resolve("2").resolve("dir"));
+        Files.write(snapshots.resolve("2").resolve("dir").resolve("file"), byte2);
+        Path directory = folder.newFolder("replayed").toPath();
+        RepositoryManager repositoryManager = RepositoryGenerator.replay(snapshots, directory);
+        List<LogCommitObject> commits = repositoryManager.log().getCommits();
+        assertEquals(3, commits.size());
+        assertEquals("2", commits.get(2).getMessage());
+        assertFalse(Files.exists(directory.resolve("file")));
+        assertArrayEquals(byte2, Files.readAllBytes(directory.resolve("dir").resolve("file")));
+        repositoryManager.checkout(commits.get(1).getHash());
+        assertArrayEquals(byte1, Files.readAllBytes(directory.resolve("dir").resolve("file")));
+    }
+
+    @Test
+    public void sparseCheckoutSkipsPathsOutsideOfPatterns() throws Exception {
+        RepositoryManager.initRepository(root);
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        addCreatedFiles(repositoryManager);
+        repositoryManager.commit("first commit");
+        repositoryManager.setSparseCheckout(Collections.singletonList("dir"));
+        assertEquals(Collections.singletonList("dir"), repositoryManager.getSparseCheckout());
+        assertFalse(Files.exists(root.resolve("file")));
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("dir").resolve("file")));
+
+        Files.createDirectory(root.resolve("other"));
+        Files.write(root.resolve("other").resolve("file"), byte1);
+        StatusObject status = repositoryManager.status();
+        assertTrue(status.getDeleted().isEmpty());
+        assertTrue(status.getUnversioned().isEmpty());
+        assertEquals(Collections.singletonList(root.resolve("dir").resolve("file")), status.getUnmodified());
+        repositoryManager.clean();
+        assertTrue(Files.exists(root.resolve("other").resolve("file")));
+
+        repositoryManager.setSparseCheckout(Collections.emptyList());
+        assertTrue(repositoryManager.getSparseCheckout().isEmpty());
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("file")));
+        assertEquals(2, repositoryManager.status().getUnmodified().size());
+    }
+
+    @Test
+    public void checkoutWritesOnlyFilesMatchingSparsePatterns() throws Exception {
+        RepositoryManager.initRepository(root);
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        addCreatedFiles(repositoryManager);
+        repositoryManager.commit("first commit");
+        repositoryManager.createBranch("second");
+        repositoryManager.checkout("second");
+        Files.write(root.resolve("file"), byte2);
+        Files.write(root.resolve("dir").resolve("file"), byte1);
+        addCreatedFiles(repositoryManager);
+        repositoryManager.commit("second commit");
+        repositoryManager.checkout("master");
+
+        Files.write(root.resolve("file"), byte2);
+        repositoryManager.setSparseCheckout(Collections.singletonList("dir/"));
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("file")));
+        Files.delete(root.resolve("file"));
+        repositoryManager.checkout("second");
+        assertFalse(Files.exists(root.resolve("file")));
+        assertArrayEquals(byte1, Files.readAllBytes(root.resolve("dir").resolve("file")));
+        assertTrue(repositoryManager.status().getDeleted().isEmpty());
+        assertTrue(repositoryManager.diff().isEmpty());
+    }
+
+    @Test
+    public void cachedBlobsDontKeepContent() throws Exception {
+        RepositoryManager.initRepository(root);
+        ObjectCache cache = new ObjectCache(16 * 1024);
+        ObjectStore store = new ObjectStore(root, cache);
+        byte[] content = new byte[64 * 1024];
+        new Random(5).nextBytes(content);
+        Path file = root.resolve("large");
+        Files.write(file, content);
+        String hash = Blob.fromFile(store, file).getHash();
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(content, ((Blob) store.read(hash)).getContent());
+        }
+        assertEquals(1, cache.getMissCount());
+        assertFalse(((Blob) store.read(hash)).isContentLoaded());
+        assertTrue(cache.getSize() <= cache.getCapacity());
+        assertTrue(ObjectCache.estimateSize(store.read(hash)) < content.length);
+    }
+
+    @Test
+    public void readOperationsReuseIndexInMemory() throws Exception {
+        RepositoryManager.initRepository(root);
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        addCreatedFiles(repositoryManager);
+        repositoryManager.commit("first commit");
+        repositoryManager.status();
+        long reads = repositoryManager.metrics().getTimers().get("index.read").getCount();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2, repositoryManager.status().getUnmodified().size());
+            assertTrue(repositoryManager.diff().isEmpty());
+            assertTrue(repositoryManager.diffStaged().isEmpty());
+        }
+        assertEquals(reads, repositoryManager.metrics().getTimers().get("index.read").getCount());
+
+        Files.write(root.resolve("file"), byte2);
+        RepositoryManager.getRepositoryManager(root).add(root.resolve("file"));
+        assertEquals(Collections.singletonList(root.resolve("file")), repositoryManager.status().getStaged());
+    }
+
+    @Test
+    public void checkoutKeepsModifiedFilesMissingInTarget() throws Exception {
+        RepositoryManager.initRepository(root);
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        repositoryManager.add(root.resolve("dir").resolve("file"));
+        repositoryManager.commit("first commit");
+        repositoryManager.createBranch("second");
+        repositoryManager.checkout("second");
+        repositoryManager.add(root.resolve("file"));
+        repositoryManager.commit("second commit");
+
+        Files.write(root.resolve("file"), byte2);
+        repositoryManager.checkout("master");
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("file")));
+        assertEquals(Collections.singletonList(root.resolve("file")), repositoryManager.status().getUnversioned());
+
+        repositoryManager.checkout("second");
+        Files.write(root.resolve("file"), byte1);
+        repositoryManager.checkout("master");
+        assertFalse(Files.exists(root.resolve("file")));
+    }
+
+    @Test
+    public void blobsLargerThanArraysCanBeStreamed() throws Exception {
+        RepositoryManager.initRepository(root);
+        long length = 3L * Integer.MAX_VALUE;
+        String hash = getHash(byte1);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                Files.newOutputStream(root.resolve(Constants.objectsDirectory).resolve(hash))))) {
+            ObjectCodec.writeHeader(out, MyGitObject.BLOB, Integer.BYTES + Long.BYTES + length);
+            ObjectCodec.writeString(out, "");
+            out.writeLong(length);
+            out.write(byte2);
+        }
+        Blob blob = (Blob) new ObjectStore(root).read(hash);
+        assertEquals(length, blob.getContentLength());
+        try (InputStream inputStream = blob.openContent()) {
+            byte[] prefix = new byte[byte2.length];
+            new DataInputStream(inputStream).readFully(prefix);
+            assertArrayEquals(byte2, prefix);
+        }
+        try {
+            blob.getContent();
+            fail();
+        } catch (FileIOException ignored) {
+        }
+    }
+
+    @Test
+    public void childrenGoFirstWhenCommitsHaveEqualDates() throws Exception {
+        RepositoryManager.initRepository(root);
+        ObjectStore store = new ObjectStore(root);
+        String tree = new Tree(store, "root", new ArrayList<>()).getHash();
+        Date date = new Date();
+        Commit initial = writeCommit(store, "initial", new Date(date.getTime() - 1000), Collections.emptyList(),
+                tree);
+        Commit parent = writeCommit(store, "parent", date, Collections.singletonList(initial.getHash()), tree);
+        CommitGraph.write(root, Arrays.asList(
+                new CommitNode(initial.getHash(), initial.getDate().getTime(), 0, initial.getParents()),
+                new CommitNode(parent.getHash(), parent.getDate().getTime(), 0, parent.getParents())));
+        Commit child = writeCommit(store, "child", date, Collections.singletonList(parent.getHash()), tree);
+        Commit merge = writeCommit(store, "merge", new Date(date.getTime() + 1000),
+                Arrays.asList(parent.getHash(), child.getHash()), tree);
+
+        CommitWalk walk = new CommitWalk(store, CommitGraph.load(root), Collections.singletonList(merge.getHash()));
+        List<String> order = new ArrayList<>();
+        for (CommitNode node = walk.next(); node != null; node = walk.next()) {
+            order.add(node.getHash());
+        }
+        assertEquals(Arrays.asList(merge.getHash(), child.getHash(), parent.getHash(), initial.getHash()), order);
+    }
+
+    private Commit writeCommit(ObjectStore store, String message, Date date, List<String> parents, String tree)
+            throws Exception {
+        Commit commit = new Commit(store, getHash(message.getBytes()), message, "author", date, parents, tree);
+        store.write(commit);
+        return commit;
+    }
+
+    @Test
+    public void checkoutOfObjectThatIsntCommitFails() throws Exception {
+        RepositoryManager.initRepository(root);
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        addCreatedFiles(repositoryManager);
+        repositoryManager.commit("first commit");
+        String branch = repositoryManager.getCurrentBranchesName();
+        for (String hash : Arrays.asList(getHash(byte1), getHash(byte2))) {
+            try {
+                repositoryManager.checkout(hash);
+                fail();
+            } catch (FileDoesntExistException ignored) {
+            }
+            assertFalse(Files.exists(root.resolve(Constants.branchesDirectory).resolve(hash)));
+        }
+        assertEquals(branch, repositoryManager.getCurrentBranchesName());
+        assertEquals(2, repositoryManager.status().getUnmodified().size());
+    }
+
+    @Test
+    public void removeAndCleanDontRunNestedOperations() throws Exception {
+        RepositoryManager.initRepository(root);
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        addCreatedFiles(repositoryManager);
+        repositoryManager.commit("first commit");
+        Files.write(root.resolve("unversioned"), byte1);
+        repositoryManager.resetMetrics();
+        repositoryManager.remove(root.resolve("file"));
+        repositoryManager.clean();
+        Map<String, MetricsReport.TimerReport> timers = repositoryManager.metrics().getTimers();
+        assertEquals(1, timers.get("operation.remove").getCount());
+        assertEquals(1, timers.get("operation.clean").getCount());
+        assertEquals(1, timers.get("index.write").getCount());
+        assertTrue(timers.get("operation.reset") == null || timers.get("operation.reset").getCount() == 0);
+        assertTrue(timers.get("operation.status") == null || timers.get("operation.status").getCount() == 0);
+        assertTrue(Files.notExists(root.resolve("file")));
+        assertTrue(Files.notExists(root.resolve("unversioned")));
+    }
+
+    @Test
+    public void treeHashDependsOnEntriesOnly() throws Exception {
+        RepositoryManager.initRepository(root);
+        ObjectStore store = new ObjectStore(root);
+        String blob = new Blob(store, byte1).getHash();
+        Tree first = new Tree(store, "first", new ArrayList<>(Collections.singletonList(
+                new TreeEntry("file", MyGitObject.BLOB, blob))));
+        Tree second = new Tree(store, "second", new ArrayList<>(Collections.singletonList(
+                new TreeEntry("file", MyGitObject.BLOB, blob))));
+        assertEquals(first.getHash(), second.getHash());
+        Tree subtree = new Tree(store, "first", new ArrayList<>(Collections.singletonList(
+                new TreeEntry("file", MyGitObject.TREE, first.getHash()))));
+        Tree file = new Tree(store, "first", new ArrayList<>(Collections.singletonList(
+                new TreeEntry("file", MyGitObject.BLOB, first.getHash()))));
+        assertNotEquals(subtree.getHash(), file.getHash());
+        Tree renamed = new Tree(store, "firs", new ArrayList<>(Collections.singletonList(
+                new TreeEntry("tfile", MyGitObject.BLOB, blob))));
+        assertNotEquals(first.getHash(), renamed.getHash());
+
+        RepositoryManager repositoryManager = RepositoryManager.getRepositoryManager(root);
+        Files.createDirectory(root.resolve("copy"));
+        Files.write(root.resolve("copy").resolve("file"), byte2);
+        addCreatedFiles(repositoryManager);
+        repositoryManager.add(root.resolve("copy").resolve("file"));
+        repositoryManager.commit("equal subtrees");
+        List<LogCommitObject> log = repositoryManager.log().getCommits();
+        Tree tree = ((Commit) store.read(log.get(log.size() - 1).getHash())).getTree();
+        assertEquals(tree.getEntries().get(0).getHash(), tree.getEntries().get(1).getHash());
+        Files.delete(root.resolve("copy").resolve("file"));
+        Files.delete(root.resolve("dir").resolve("file"));
+        repositoryManager.checkout("master");
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("copy").resolve("file")));
+        assertArrayEquals(byte2, Files.readAllBytes(root.resolve("dir").resolve("file")));
+    }
+
+    @Test
+    public void mergeKeepsFileModifiedInMergedBranchAndDeletedInCurrent() throws Exception {
+        mergeModifiedAndDeletedFile(true);
+    }
+
+    @Test
+    public void mergeKeepsFileModifiedInCurrentBranchAndDeletedInMerged() throws Exception {
+        mergeModifiedAndDeletedFile(false);
+    }
+
+    private void mergeModifiedAndDeletedFile(boolean deletedInCurrent) throws Exception {
+        RepositoryManager.initRepository(root);
+        ObjectStore store = new ObjectStore(root);
+        TreeEntry base = new TreeEntry("file", MyGitObject.BLOB, new Blob(store, byte1).getHash());
+        TreeEntry modified = new TreeEntry("file", MyGitObject.BLOB, new Blob(store, byte2).getHash());
+        Tree baseTree = new Tree(store, "root", new ArrayList<>(Collections.singletonList(base)));
+        Tree modifiedTree = new Tree(store, "root", new ArrayList<>(Collections.singletonList(modified)));
+        Tree deletedTree = new Tree(store, "root", new ArrayList<>());
+
+        TreeMerge merge = new TreeMerge(store, "master", "second");
+        Tree result = deletedInCurrent ? merge.merge(baseTree, deletedTree, modifiedTree, root)
+                : merge.merge(baseTree, modifiedTree, deletedTree, root);
+        assertEquals(Collections.singletonList(root.resolve("file")), merge.getConflicts());
+        assertEquals(modified.getHash(), result.getEntry("file").getHash());
+    }
+}